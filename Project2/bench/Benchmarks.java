@@ -0,0 +1,399 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks for the render and input hot paths of the game.
+ * Each benchmark is warmed up, then measured over several fixed-length iterations, and reports 
+ * its throughput (ops/s) and its allocation rate (bytes allocated per op, and the number of GCs), 
+ * so that results can be compared release over release.
+ * 
+ * The sketch is drawn onto an offscreen Java2D graphics (no window is opened), so the benchmarks
+ * can run on a machine without a display. To compile and run (from the Project2 folder):
+ *   javac -cp core.jar -d out src/*.java bench/*.java
+ *   java -Djava.awt.headless=true -cp out:core.jar Benchmarks [results.csv]
+ * If a csv file is given, one line per benchmark is appended to it.
+ * @author stefanieim
+ */
+public class Benchmarks {
+  public final static int WARMUP_ITERATIONS = 3;
+  public final static int MEASURE_ITERATIONS = 5;
+  public final static long ITERATION_NANOS = 1000000000L; //length of each iteration (1 second)
+
+  /**
+   * An operation to be benchmarked.
+   */
+  interface Op {
+    void run() throws Throwable;
+  }
+
+  /**
+   * The result of one benchmark.
+   */
+  static class Result {
+    final String name;
+    final double opsPerSec; //mean throughput over all measured iterations
+    final double error; //standard deviation of the throughput over all measured iterations
+    final double bytesPerOp; //bytes allocated by the benchmark thread per op
+    final long gcCount; //number of garbage collections during the measured iterations
+
+    Result(String name, double opsPerSec, double error, double bytesPerOp, long gcCount) {
+      this.name = name;
+      this.opsPerSec = opsPerSec;
+      this.error = error;
+      this.bytesPerOp = bytesPerOp;
+      this.gcCount = gcCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-36s %14.1f ops/s  +- %10.1f  %10.1f B/op  %4d gc", 
+          name, opsPerSec, error, bytesPerOp, gcCount);
+    }
+  }
+
+  private final static com.sun.management.ThreadMXBean THREADS = 
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final static MethodHandles.Lookup LOOKUP = lookup();
+
+  private static volatile Object sink; //keeps results alive, so the JIT can't remove the benchmarked code
+
+  public static void main(String[] args) throws Throwable {
+    System.setProperty("java.awt.headless", "true");
+    List<Result> results = new ArrayList<Result>();
+
+    results.add(benchKeyPressed());
+    for (int n : new int[] {10, 1000, 100000}) {
+      results.add(benchDrawListOfCircles(n));
+    }
+    for (int n : new int[] {1000, 10000}) {
+      results.add(benchRedrawCircleLayer(n));
+    }
+    results.add(benchCircleAt(100000));
+    results.add(benchDrawButton());
+    results.add(benchDrawHeader());
+    results.add(benchDrawScoreBoard());
+    results.add(benchTypeName());
+    results.add(benchDrawNameBox());
+    for (int n : new int[] {1000, 100000, 1000000}) {
+      results.add(benchDetermineWinner(n));
+    }
+
+    if (args.length > 0) {
+      writeCsv(args[0], results);
+    }
+  }
+
+  //BENCHMARKS------------------------------------
+
+  /**
+   * Throughput of scoring a point (a space bar press and release, from the input buffer) 
+   * during the PLAYING_ACTIVE state.
+   */
+  private static Result benchKeyPressed() throws Throwable {
+    Presser presser = new Presser(activeSketch(1));
+    return report(measure("keyPressed", presser::press));
+  }
+
+  /**
+   * Cost of drawListOfCircles() with the given number of circles for the current player.
+   */
+  private static Result benchDrawListOfCircles(int circles) throws Throwable {
+    Processing sketch = activeSketch(1);
+    Presser presser = new Presser(sketch);
+    for (int i = 0; i < circles; i++) {
+      presser.press();
+    }
+    MethodHandle drawListOfCircles = method("drawListOfCircles", void.class);
+    return report(measure("drawListOfCircles/" + circles, () -> drawListOfCircles.invoke(sketch)));
+  }
+
+  /**
+   * Cost of redrawCircleLayer() with the given number of circles (only the circles that aren't hidden are drawn).
+   */
+  private static Result benchRedrawCircleLayer(int circles) throws Throwable {
+    Processing sketch = activeSketch(1);
+    Presser presser = new Presser(sketch);
+    for (int i = 0; i < circles; i++) {
+      presser.press();
+    }
+    MethodHandle redrawCircleLayer = method("redrawCircleLayer", void.class, int.class);
+    return report(measure("redrawCircleLayer/" + circles, () -> redrawCircleLayer.invoke(sketch, 0)));
+  }
+
+  /**
+   * Cost of finding the circle under a (random) point with the given number of circles.
+   */
+  private static Result benchCircleAt(int circles) throws Throwable {
+    CircleBuffer buffer = new CircleBuffer();
+    CircleIndex index = new CircleIndex(buffer, Processing.CANVAS_X, Processing.CANVAS_Y);
+    CircleGenerator generator = new CircleGenerator(42, Processing.CANVAS_X, Processing.CANVAS_Y);
+    for (int i = 0; i < circles; i++) {
+      generator.addNextTo(buffer);
+      index.addNext();
+    }
+    Random random = new Random(42);
+    return report(measure("circleAt/" + circles, 
+        () -> sink = index.circleAt(random.nextFloat() * Processing.CANVAS_X, random.nextFloat() * Processing.CANVAS_Y)));
+  }
+
+  /**
+   * Per-frame cost of drawButton() for one button.
+   */
+  private static Result benchDrawButton() throws Throwable {
+    Processing sketch = activeSketch(1);
+    Button btn = new Button(100, 100, Processing.BTN_WIDTH, Processing.BTN_HEIGHT, 
+        "START", sketch.color(80, 2, 106), sketch.color(133, 40, 165), sketch.color(255));
+    MethodHandle drawButton = method("drawButton", void.class, Button.class);
+    return report(measure("drawButton", () -> drawButton.invoke(sketch, btn)));
+  }
+
+  /**
+   * Per-frame cost of drawHeader() with two scoreboards.
+   */
+  private static Result benchDrawHeader() throws Throwable {
+    Processing sketch = activeSketch(2);
+    MethodHandle drawHeader = method("drawHeader", void.class, GameState.class);
+    return report(measure("drawHeader", () -> drawHeader.invoke(sketch, GameState.PLAYING_ACTIVE)));
+  }
+
+  /**
+   * Per-frame cost of drawScoreBoard() for one scoreboard (its name and captions are cached labels, 
+   * and its score and countdown are drawn from the digit atlas).
+   */
+  private static Result benchDrawScoreBoard() throws Throwable {
+    Processing sketch = activeSketch(2);
+    MethodHandle drawScoreBoard = method("drawScoreBoard", void.class, int.class);
+    return report(measure("drawScoreBoard", () -> drawScoreBoard.invoke(sketch, 0)));
+  }
+
+  /**
+   * Cost of typing into a name box (a character, then a backspace, so the name never fills up), through keyPressed().
+   */
+  private static Result benchTypeName() throws Throwable {
+    Processing sketch = nameEntrySketch(2);
+    char[] keys = {'a', Processing.BACKSPACE};
+    int[] typed = {0};
+    return report(measure("typeName", () -> {
+      sketch.key = keys[typed[0]++ & 1];
+      sketch.keyPressed();
+    }));
+  }
+
+  /**
+   * Per-frame cost of drawNameBox() for the name box being typed into (its text and caret are drawn from the text atlas).
+   */
+  private static Result benchDrawNameBox() throws Throwable {
+    Processing sketch = nameEntrySketch(2);
+    for (char c : "grace".toCharArray()) {
+      sketch.key = c;
+      sketch.keyPressed();
+    }
+    MethodHandle drawNameBox = method("drawNameBox", void.class, int.class);
+    return report(measure("drawNameBox", () -> drawNameBox.invoke(sketch, 0)));
+  }
+
+  /**
+   * Cost of GameModel.determineWinner() with the given number of players (with random scores).
+   */
+  private static Result benchDetermineWinner(int players) throws Throwable {
+    GameModel model = new GameModel();
+    model.addPlayers(players);
+    Random random = new Random(42);
+    for (Player p : model.getPlayersList()) {
+      p.setScore(random.nextInt(1000));
+    }
+    return report(measure("determineWinner/" + players, () -> sink = model.determineWinner()));
+  }
+
+  //HARNESS helpers------------------------------------
+
+  /**
+   * Runs the warmup iterations and then the measured iterations of the given operation.
+   * @param name the name of the benchmark
+   * @param op the operation to benchmark
+   * @return the result of the measured iterations
+   */
+  private static Result measure(String name, Op op) throws Throwable {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      iteration(op);
+    }
+    long threadId = Thread.currentThread().getId();
+    long gcBefore = gcCount();
+    long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+    long totalOps = 0;
+    double[] throughput = new double[MEASURE_ITERATIONS];
+    for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      long ops = iteration(op);
+      throughput[i] = ops * 1e9 / (System.nanoTime() - start);
+      totalOps += ops;
+    }
+    long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+    long gcs = gcCount() - gcBefore;
+
+    double mean = 0;
+    for (double t : throughput) {
+      mean += t / throughput.length;
+    }
+    double variance = 0;
+    for (double t : throughput) {
+      variance += (t - mean) * (t - mean) / throughput.length;
+    }
+    return new Result(name, mean, Math.sqrt(variance), (double) bytes / totalOps, gcs);
+  }
+
+  /**
+   * Runs the given operation repeatedly for one iteration (ITERATION_NANOS).
+   * @param op the operation to run
+   * @return the number of times the operation was run
+   */
+  private static long iteration(Op op) throws Throwable {
+    long end = System.nanoTime() + ITERATION_NANOS;
+    long ops = 0;
+    do {
+      for (int i = 0; i < 64; i++) { //check the time only every 64 ops
+        op.run();
+      }
+      ops += 64;
+    } while (System.nanoTime() < end);
+    return ops;
+  }
+
+  /**
+   * Returns the total number of garbage collections so far.
+   * @return the total number of garbage collections
+   */
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  /**
+   * Prints the given result and returns it.
+   */
+  private static Result report(Result result) {
+    System.out.println(result);
+    return result;
+  }
+
+  /**
+   * Appends the given results to the csv file with the given path.
+   */
+  private static void writeCsv(String path, List<Result> results) throws IOException {
+    try (PrintWriter out = new PrintWriter(new FileWriter(path, true))) {
+      long timestamp = System.currentTimeMillis();
+      for (Result r : results) {
+        out.printf("%d,%s,%.1f,%.1f,%.1f,%d%n", timestamp, r.name, r.opsPerSec, r.error, r.bytesPerOp, r.gcCount);
+      }
+    }
+  }
+
+  //SKETCH helpers------------------------------------
+
+  /**
+   * Scores points in a sketch by adding space bar presses and releases to its input buffer, 
+   * with timestamps that are far enough apart not to count as auto-repeats, and then updating the sketch
+   * from its game logic (as at the start of a frame: a tick handles the presses, and the new circle is added).
+   * Since the sketch's clock is frozen, the player's round is restarted before the presses' timestamps
+   * reach the end of the round.
+   */
+  static class Presser {
+    private final static long PRESS_INTERVAL = 3 * Processing.AUTO_REPEAT_GAP_NANOS;
+    private final Processing sketch;
+    private final MethodHandle updateFromLogic;
+    private final CountdownTimer timer;
+    private long nanos; //timestamp of the next press
+    private long roundStart; //timestamp at which the round was last restarted
+
+    Presser(Processing sketch) throws Throwable {
+      this.sketch = sketch;
+      this.updateFromLogic = method("updateFromLogic", void.class);
+      this.timer = sketch.model.getPlayer(sketch.model.getTurn()).timer;
+      this.nanos = 0;
+      this.roundStart = 0;
+    }
+
+    void press() throws Throwable {
+      if (this.nanos - this.roundStart > (Player.TIMELIMIT - 1) * 1000000000L) {
+        this.roundStart = this.nanos;
+        this.timer.start(this.nanos);
+      }
+      this.sketch.replayInput(InputRingBuffer.KEY_DOWN, ' ', 32, this.nanos);
+      this.sketch.replayInput(InputRingBuffer.KEY_UP, ' ', 32, this.nanos + 1000);
+      this.updateFromLogic.invoke(this.sketch);
+      this.nanos += PRESS_INTERVAL;
+    }
+  }
+
+  /**
+   * Creates a sketch that draws onto an offscreen graphics, with the given number of players,
+   * and moves it onto the PLAYING_ACTIVE state. The sketch's clock is frozen, so the round never ends.
+   * @param players the number of players
+   * @return the sketch in the PLAYING_ACTIVE state
+   */
+  private static Processing activeSketch(int players) throws Throwable {
+    Processing sketch = nameEntrySketch(players);
+    GameEngine engine = (GameEngine) LOOKUP.findGetter(Processing.class, "engine", GameEngine.class).invoke(sketch);
+    String[] names = new String[players];
+    for (int i = 0; i < players; i++) {
+      names[i] = "player" + i;
+    }
+    engine.confirmNames(names);
+    engine.start();
+    method("updateFromLogic", void.class).invoke(sketch); //the first snapshot with the players' scores and times
+    return sketch;
+  }
+
+  /**
+   * Creates a sketch that draws onto an offscreen graphics, with the given number of players whose names are
+   * being entered, and the mouse over the first player's name box (so that it is typed into).
+   * The sketch's clock is frozen.
+   * @param players the number of players
+   * @return the sketch on the name entry screen
+   */
+  private static Processing nameEntrySketch(int players) throws Throwable {
+    Processing sketch = new Processing();
+    GameEngine engine = new GameEngine(() -> 0L); //frozen clock
+    LOOKUP.findSetter(Processing.class, "engine", GameEngine.class).invoke(sketch, engine);
+
+    OffscreenRenderer renderer = new OffscreenRenderer(sketch);
+    renderer.setup();
+    renderer.getGraphics().beginDraw(); //the benchmarks draw onto the graphics outside of draw()
+
+    method("setPlayerVariables", void.class, int.class).invoke(sketch, players);
+    sketch.mouseX = Processing.CANVAS_X/2;
+    sketch.mouseY = Processing.CANVAS_VERTICAL_INC*3;
+    return sketch;
+  }
+
+  /**
+   * Finds the (private) method of the Processing class with the given name and types.
+   */
+  private static MethodHandle method(String name, Class<?> returnType, Class<?>... parameterTypes) throws ReflectiveOperationException {
+    return LOOKUP.findVirtual(Processing.class, name, MethodType.methodType(returnType, parameterTypes));
+  }
+
+  /**
+   * Returns a lookup that has access to the private members of the Processing class.
+   */
+  private static MethodHandles.Lookup lookup() {
+    try {
+      return MethodHandles.privateLookupIn(Processing.class, MethodHandles.lookup());
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A render test of the whole view, run headlessly (with an OffscreenRenderer, so no display is needed).
+ * It plays a scripted DUAL game (the same seed and clock at every run), and at each of its screens
+ * (intro, name entry, start, a running round with CIRCLES circles, time's up and final) it:
+ *  - compares the frame to a golden image, with a tolerance (a few pixels can differ slightly, e.g.
+ *    because of anti-aliasing), and
+ *  - draws the screen WARMUP_FRAMES + MEASURED_FRAMES times (repainting the whole canvas), and checks
+ *    the time of every measured frame against a time budget.
+ * When a frame doesn't match its golden image, the frame and an image of the differing pixels (in red)
+ * are saved into the FAILURES_DIR directory. The test exits with status 1 if any check failed.
+ *
+ * To run (from the Project2 folder, after compiling src and bench into out):
+ *   java -Djava.awt.headless=true -cp out:core.jar RenderTest [budgetMillis] [goldenDir]
+ * and add -Drendertest.update=true to save the frames as the new golden images (after a change of the view).
+ * @author stefanieim
+ */
+public class RenderTest {
+  public final static double DEFAULT_BUDGET_MILLIS = 1000.0 / 60; //one frame at 60 frames per second
+  public final static String DEFAULT_GOLDEN_DIR = "bench/golden";
+  public final static String FAILURES_DIR = "render-failures";
+  public final static String UPDATE_PROPERTY = "rendertest.update"; //system property that saves new golden images
+  public final static long SEED = 2024; //seed of the circles
+  public final static int CIRCLES = 300; //circles added by the first player (the second player adds half of them)
+  public final static int CHANNEL_TOLERANCE = 8; //largest difference of a color channel for pixels to be the same
+  public final static double MAX_DIFFERENT_PIXELS = 0.002; //fraction of the pixels that can differ
+  public final static int WARMUP_FRAMES = 20;
+  public final static int MEASURED_FRAMES = 30;
+  private final static long PRESS_INTERVAL = 5000000L; //time between two space bar presses (5 ms)
+
+  private static long now = 1000000000L; //the time of the engine's clock, moved forward by the script
+  private static OffscreenRenderer renderer;
+  private static Processing sketch;
+  private static File goldenDir;
+  private static long budgetNanos;
+  private static boolean update;
+  private static final List<String> failures = new ArrayList<String>();
+
+  public static void main(String[] args) throws IOException {
+    System.setProperty("java.awt.headless", "true");
+    System.setProperty(Processing.FULL_REDRAW_PROPERTY, "true"); //every frame is timed as a full repaint
+    double budgetMillis = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_BUDGET_MILLIS;
+    budgetNanos = (long) (budgetMillis * 1e6);
+    goldenDir = new File(args.length > 1 ? args[1] : DEFAULT_GOLDEN_DIR);
+    update = Boolean.getBoolean(UPDATE_PROPERTY);
+    if (update) {
+      goldenDir.mkdirs();
+    }
+
+    sketch = new Processing();
+    sketch.replay(new GameEngine(() -> now), SEED); //scripted inputs, like a replay: nothing is recorded or saved
+    renderer = new OffscreenRenderer(sketch);
+    renderer.setup();
+    System.out.printf("%-10s %10s %10s %10s  %s%n", "screen", "p50 (ms)", "max (ms)", "over", "golden image");
+
+    check("intro");
+    //DUAL player, and both names
+    click(Processing.CANVAS_X - Processing.CANVAS_X/5 - Processing.BTN_WIDTH/2, Processing.CANVAS_VERTICAL_INC*3 + 10);
+    click(Processing.CANVAS_X/2, Processing.CANVAS_VERTICAL_INC*3);
+    type("ada");
+    click(Processing.CANVAS_X/2, Processing.CANVAS_VERTICAL_INC*4);
+    type("grace");
+    check("names");
+    click(Processing.CANVAS_X/2, Processing.CANVAS_VERTICAL_INC*5 + 10); //CONFIRM
+    check("start");
+    //the first player's round
+    click(Processing.CANVAS_X/2, (int) (Processing.CANVAS_VERTICAL_INC*3.8) + 10); //START
+    press(CIRCLES);
+    check("active");
+    now += Player.TIMELIMIT * 1000000000L;
+    check("timesup");
+    //the second player's round, then the final screen
+    click(Processing.CANVAS_X/2, (int) (Processing.CANVAS_VERTICAL_INC*3.8) + 10); //NEXT
+    click(Processing.CANVAS_X/2, (int) (Processing.CANVAS_VERTICAL_INC*3.8) + 10); //START
+    press(CIRCLES / 2);
+    now += Player.TIMELIMIT * 1000000000L;
+    renderer.renderFrame();
+    click(Processing.CANVAS_X/2, (int) (Processing.CANVAS_VERTICAL_INC*3.8) + 10); //NEXT
+    check("final");
+    renderer.close();
+
+    if (failures.isEmpty()) {
+      System.out.println("all screens passed");
+    }
+    else {
+      System.out.println(failures.size() + " check(s) failed:");
+      for (String failure : failures) {
+        System.out.println("  " + failure);
+      }
+    }
+    System.exit(failures.isEmpty() ? 0 : 1);
+  }
+
+  //SCRIPT------------------------------------
+
+  /**
+   * Clicks at the given position (the mouse stays there for the next frames).
+   */
+  private static void click(int x, int y) {
+    sketch.mouseX = x;
+    sketch.mouseY = y;
+    sketch.mouseClicked();
+  }
+
+  /**
+   * Types the given text (e.g. into the selected name box).
+   */
+  private static void type(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      sketch.key = text.charAt(i);
+      sketch.keyCode = 0;
+      sketch.keyPressed();
+    }
+  }
+
+  /**
+   * Presses and releases the space bar the given number of times, from now on (the presses are handled
+   * at the start of the next frame, and the clock is moved past the last release).
+   */
+  private static void press(int presses) {
+    for (int i = 0; i < presses; i++) {
+      sketch.replayInput(InputRingBuffer.KEY_DOWN, ' ', 32, now);
+      sketch.replayInput(InputRingBuffer.KEY_UP, ' ', 32, now + PRESS_INTERVAL / 5);
+      now += PRESS_INTERVAL;
+    }
+  }
+
+  //CHECKS------------------------------------
+
+  /**
+   * Draws the current screen, checks the time of its frames against the budget and compares it to its golden image.
+   * @param screen the name of the screen (the name of its golden image)
+   */
+  private static void check(String screen) throws IOException {
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      renderer.renderFrame();
+    }
+    long[] times = new long[MEASURED_FRAMES];
+    int over = 0;
+    for (int i = 0; i < MEASURED_FRAMES; i++) {
+      times[i] = renderer.renderFrame();
+      if (times[i] > budgetNanos) {
+        over++;
+      }
+    }
+    Arrays.sort(times);
+    if (over > 0) {
+      failures.add(String.format("%s: %d of %d frames over the budget of %.1f ms (max %.2f ms)",
+          screen, over, MEASURED_FRAMES, budgetNanos / 1e6, times[MEASURED_FRAMES - 1] / 1e6));
+    }
+    System.out.printf("%-10s %10.2f %10.2f %10d  %s%n", screen, times[MEASURED_FRAMES / 2] / 1e6,
+        times[MEASURED_FRAMES - 1] / 1e6, over, compare(screen));
+  }
+
+  /**
+   * Compares the last frame to the golden image of the given screen (or saves it as the golden image, when updating).
+   * @param screen the name of the screen
+   * @return the result of the comparison, to report
+   */
+  private static String compare(String screen) throws IOException {
+    File golden = new File(goldenDir, screen + ".png");
+    if (update) {
+      renderer.save(golden);
+      return "saved " + golden.getPath();
+    }
+    if (!golden.exists()) {
+      failures.add(screen + ": no golden image " + golden.getPath() + " (run with -D" + UPDATE_PROPERTY + "=true)");
+      return "missing";
+    }
+    BufferedImage expected = ImageIO.read(golden);
+    int width = Processing.CANVAS_X, height = Processing.CANVAS_Y;
+    if (expected.getWidth() != width || expected.getHeight() != height) {
+      failures.add(screen + ": the golden image is " + expected.getWidth() + "x" + expected.getHeight());
+      return "wrong size";
+    }
+    int[] actual = renderer.getPixels();
+    BufferedImage diff = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int different = 0, maxDelta = 0;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int a = actual[y*width + x], e = expected.getRGB(x, y);
+        int delta = Math.max(Math.abs((a >> 16 & 0xFF) - (e >> 16 & 0xFF)),
+            Math.max(Math.abs((a >> 8 & 0xFF) - (e >> 8 & 0xFF)), Math.abs((a & 0xFF) - (e & 0xFF))));
+        maxDelta = Math.max(maxDelta, delta);
+        if (delta > CHANNEL_TOLERANCE) {
+          different++;
+          diff.setRGB(x, y, 0xFF0000);
+        }
+        else {
+          diff.setRGB(x, y, (a >> 2) & 0x3F3F3F); //the frame, darkened
+        }
+      }
+    }
+    String result = String.format("%d pixels differ (max channel delta %d)", different, maxDelta);
+    if (different > MAX_DIFFERENT_PIXELS * width * height) {
+      File dir = new File(FAILURES_DIR);
+      dir.mkdirs();
+      renderer.save(new File(dir, screen + "-actual.png"));
+      ImageIO.write(diff, "png", new File(dir, screen + "-diff.png"));
+      failures.add(screen + ": " + result + ", see " + dir.getPath());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,134 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client simulator that load tests the GameServer over loopback: it opens many sessions at once, 
+ * and each session plays rounds (PLAYERS, NAMES, START, a number of PRESSes, RESET) as fast as it can.
+ * It reports the number of sessions per core, the command throughput, and the latency of the commands 
+ * (the time from sending a command to receiving its answer).
+ * 
+ * To run (from the Project2 folder, after compiling src and bench into out):
+ *   java -cp out:core.jar ServerLoadTest [sessions] [seconds] [port]
+ * If no port is given, a server is started in the same JVM on a free port.
+ * @author stefanieim
+ */
+public class ServerLoadTest {
+  public final static int DEFAULT_SESSIONS = 1000;
+  public final static int DEFAULT_SECONDS = 10;
+  public final static int PRESSES_PER_ROUND = 20;
+
+  private final static AtomicLong errors = new AtomicLong(); //ERR answers or failed sessions
+  private final static AtomicLong rejected = new AtomicLong(); //NO answers (e.g. a PRESS after the round's time was up)
+  private static volatile boolean measuring; //set once all sessions are connected
+  private static volatile long endAt; //end of the measured window
+
+  public static void main(String[] args) throws Exception {
+    int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+    GameServer server = args.length > 2 ? null : new GameServer(0);
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : server.getPort();
+
+    List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+    CountDownLatch connected = new CountDownLatch(sessions);
+    CountDownLatch done = new CountDownLatch(sessions);
+    ExecutorService clients = GameServer.newThreadPerTaskExecutor("client");
+    for (int i = 0; i < sessions; i++) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histograms.add(histogram);
+      String name = "s" + i;
+      clients.execute(() -> {
+        try {
+          runSession(port, name, histogram, connected);
+        } catch (IOException | InterruptedException e) {
+          errors.incrementAndGet();
+          connected.countDown();
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+    connected.await();
+    long start = System.nanoTime();
+    endAt = start + seconds * 1000000000L;
+    measuring = true;
+    done.await();
+    long elapsed = System.nanoTime() - start;
+    clients.shutdown();
+
+    LatencyHistogram total = new LatencyHistogram();
+    for (LatencyHistogram histogram : histograms) {
+      total.add(histogram);
+    }
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.println("threads:          " + (GameServer.hasVirtualThreads() ? "virtual" : "platform"));
+    System.out.println("sessions:         " + sessions + " (" + (sessions / cores) + " per core, " + cores + " cores)");
+    System.out.printf("commands:         %d (%.0f/s)%n", total.getCount(), total.getCount() / (elapsed / 1e9));
+    System.out.printf("latency (us):     p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f  mean %.1f%n", 
+        total.getPercentile(50) / 1e3, total.getPercentile(99) / 1e3, total.getPercentile(99.9) / 1e3, 
+        total.getMax() / 1e3, total.getMean() / 1e3);
+    System.out.println("rejected:         " + rejected.get());
+    System.out.println("errors:           " + errors.get());
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  /**
+   * Runs one simulated session until the end of the measured window, recording the latency of each command.
+   */
+  private static void runSession(int port, String name, LatencyHistogram histogram, CountDownLatch connected) 
+      throws IOException, InterruptedException {
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      socket.setTcpNoDelay(true);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      connected.countDown();
+      connected.await();
+      while (!measuring) {
+        Thread.sleep(1);
+      }
+      while (System.nanoTime() - endAt < 0) {
+        send(in, out, "PLAYERS 1", histogram);
+        send(in, out, "NAMES " + name, histogram);
+        send(in, out, "START", histogram);
+        for (int i = 0; i < PRESSES_PER_ROUND; i++) {
+          send(in, out, "PRESS", histogram);
+        }
+        send(in, out, "RESET", histogram);
+      }
+      out.write("QUIT\n");
+      out.flush();
+    }
+  }
+
+  /**
+   * Sends one command and waits for its answer, recording the round-trip time.
+   */
+  private static void send(BufferedReader in, BufferedWriter out, String command, LatencyHistogram histogram) throws IOException {
+    long start = System.nanoTime();
+    out.write(command);
+    out.write('\n');
+    out.flush();
+    String answer = in.readLine();
+    histogram.record(System.nanoTime() - start);
+    if (answer == null) {
+      throw new IOException("the server closed the session");
+    }
+    if (answer.startsWith("NO")) {
+      rejected.incrementAndGet();
+    }
+    else if (!answer.startsWith("OK")) {
+      errors.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * This class represents a rectangular button on the canvas.
+ * A button has a position, a size, a label, and the colors (rgb) of its normal state, its hover state and its text.
+ * The button is not redrawn from scratch at every frame: its normal and hover images are rendered once
+ * (through a WidgetCache) and only drawn onto the canvas at every frame, until its label or colors change.
+ * @author stefanieim
+ */
+public class Button {
+  private int x, y; //position of the top left corner
+  private final int width, height;
+  private String label;
+  private int color, hoverColor, textColor; //packed ARGB colors
+  private final float textX, textY; //position of the center of the label, relative to the top left corner
+
+  private PImage normalImage, hoverImage; //the rendered images of this button, null if not rendered yet
+  private int cacheVersion; //the version of the widget cache that the images were taken from
+
+  /**
+   * Creates a new button with its label centered in it.
+   * @param x the x position of the top left corner of this button
+   * @param y the y position of the top left corner of this button
+   * @param width the width of this button
+   * @param height the height of this button
+   * @param label the text to be displayed for this button
+   * @param color the color of this button (packed ARGB)
+   * @param hoverColor the color of this button when the mouse hovers over it (packed ARGB)
+   * @param textColor the color of the label (packed ARGB)
+   */
+  public Button(int x, int y, int width, int height, String label, int color, int hoverColor, int textColor) {
+    this(x, y, width, height, label, color, hoverColor, textColor, width/2, height/2);
+  }
+
+  /**
+   * Creates a new button with its label centered at the given position (relative to the top left corner).
+   * @param x the x position of the top left corner of this button
+   * @param y the y position of the top left corner of this button
+   * @param width the width of this button
+   * @param height the height of this button
+   * @param label the text to be displayed for this button
+   * @param color the color of this button (packed ARGB)
+   * @param hoverColor the color of this button when the mouse hovers over it (packed ARGB)
+   * @param textColor the color of the label (packed ARGB)
+   * @param textX the x position of the center of the label, relative to the top left corner
+   * @param textY the y position of the center of the label, relative to the top left corner
+   */
+  public Button(int x, int y, int width, int height, String label, int color, int hoverColor, int textColor, 
+      float textX, float textY) {
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+    this.label = label;
+    this.color = color;
+    this.hoverColor = hoverColor;
+    this.textColor = textColor;
+    this.textX = textX;
+    this.textY = textY;
+  }
+
+  /**
+   * Draws this button onto the given sketch, in its hover state if the sketch's mouse is over it.
+   * The images of this button are rendered (or taken from the given cache) only if they are not rendered yet
+   * or if the label, colors or theme changed since they were rendered.
+   * @param sketch the sketch to draw this button onto
+   * @param cache the cache of rendered widget images
+   */
+  public void draw(PApplet sketch, WidgetCache cache) {
+    if (this.normalImage == null || this.cacheVersion != cache.getVersion()) {
+      this.normalImage = cache.get(sketch, this, false);
+      this.hoverImage = cache.get(sketch, this, true);
+      this.cacheVersion = cache.getVersion();
+    }
+    sketch.image(contains(sketch.mouseX, sketch.mouseY) ? this.hoverImage : this.normalImage, this.x, this.y);
+  }
+
+  /**
+   * Renders this button onto the top left corner of the given graphics (used by the WidgetCache).
+   * @param pg the graphics to render onto, which must be drawing (between beginDraw and endDraw)
+   * @param hover true to render the hover state of this button
+   */
+  void render(PGraphics pg, boolean hover) {
+    pg.background(hover ? this.hoverColor : this.color);
+    pg.fill(this.textColor);
+    pg.textAlign(PApplet.CENTER, PApplet.CENTER);
+    pg.textSize(Processing.TEXTSIZE_BTN);
+    pg.text(this.label, this.textX, this.textY);
+  }
+
+  /**
+   * Returns the key of this button's image in the widget cache (the images only depend on the
+   * label, size and colors of a button, so buttons that only differ in position share their images).
+   * @param hover true for the key of the hover image
+   * @return the key of this button's image
+   */
+  String cacheKey(boolean hover) {
+    return this.label + '|' + this.width + 'x' + this.height + '|' + (hover ? this.hoverColor : this.color) 
+        + '|' + this.textColor + '|' + this.textX + ',' + this.textY;
+  }
+
+  /**
+   * Determines if the given point is within this button's area.
+   * @param px the x position of the point
+   * @param py the y position of the point
+   * @return true if the point is within this button
+   */
+  public boolean contains(int px, int py) {
+    return (this.x <= px && px <= this.x + this.width) && (this.y <= py && py <= this.y + this.height);
+  }
+
+  /**
+   * Moves this button to the given position (the rendered images are still valid).
+   * @param x the x position of the top left corner
+   * @param y the y position of the top left corner
+   */
+  public void setPosition(int x, int y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  /**
+   * Changes the label of this button (the images will be rendered again the next time it is drawn).
+   * @param label the new text to be displayed for this button
+   */
+  public void setLabel(String label) {
+    if (!label.equals(this.label)) {
+      this.label = label;
+      this.normalImage = null;
+    }
+  }
+
+  /**
+   * Changes the colors of this button (the images will be rendered again the next time it is drawn).
+   * @param color the color of this button (packed ARGB)
+   * @param hoverColor the color of this button when the mouse hovers over it (packed ARGB)
+   * @param textColor the color of the label (packed ARGB)
+   */
+  public void setColors(int color, int hoverColor, int textColor) {
+    if (color != this.color || hoverColor != this.hoverColor || textColor != this.textColor) {
+      this.color = color;
+      this.hoverColor = hoverColor;
+      this.textColor = textColor;
+      this.normalImage = null;
+    }
+  }
+
+  /**
+   * Returns the x position of the top left corner of this button.
+   * @return the x position of this button
+   */
+  public int getX() {
+    return this.x;
+  }
+
+  /**
+   * Returns the y position of the top left corner of this button.
+   * @return the y position of this button
+   */
+  public int getY() {
+    return this.y;
+  }
+
+  /**
+   * Returns the width of this button.
+   * @return the width of this button
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Returns the height of this button.
+   * @return the height of this button
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Returns the text displayed for this button.
+   * @return the label of this button
+   */
+  public String getLabel() {
+    return this.label;
+  }
+}
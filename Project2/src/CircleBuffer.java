@@ -0,0 +1,278 @@
+import java.util.Arrays;
+
+/**
+ * This class stores the circles created by one player.
+ * Instead of keeping an object for each circle, the circles are stored in growable arrays of primitives
+ * (one array for each of x, y, diameter and color), so adding a circle does not create any new objects
+ * (except for when the arrays need to grow).
+ *
+ * A buffer can be bounded to a maximum number of circles, so that its memory stays flat however many circles
+ * are created: the arrays then never grow past that size, and are used as a ring. Every circle keeps the index
+ * it was added with (indices keep growing), and the oldest circles have to be evicted (evict) before more
+ * circles can be added to a full buffer. The circles that are kept are the ones from getFirst() to size() - 1.
+ * @author stefanieim
+ */
+public class CircleBuffer {
+  public final static int DEFAULT_CAPACITY = 64;
+  public final static int UNBOUNDED = Integer.MAX_VALUE; //maximum number of circles of a buffer that is never full
+
+  /**
+   * How the circles of a bounded buffer are removed once it is full:
+   * - OLDEST_FIRST: the oldest circles disappear
+   * - FADE_AND_DROP: the oldest circles fade out before they disappear
+   */
+  public enum Eviction {
+    OLDEST_FIRST,
+    FADE_AND_DROP;
+  }
+
+  private float[] x; //x position of the center of each circle
+  private float[] y; //y position of the center of each circle
+  private float[] diameter; //diameter of each circle
+  private int[] argb; //color of each circle, packed as an ARGB integer
+  private final int maxSize; //the largest number of circles kept at once
+  private int first; //the index of the oldest circle kept
+  private int size; //the number of circles added to this buffer (the index of the next circle)
+
+  /**
+   * Creates a new empty (unbounded) circle buffer with the default capacity.
+   */
+  public CircleBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new empty (unbounded) circle buffer that can hold the given number of circles before needing to grow.
+   * @param capacity the initial number of circles this buffer can hold
+   */
+  public CircleBuffer(int capacity) {
+    this(capacity, UNBOUNDED);
+  }
+
+  /**
+   * Creates a new empty circle buffer that can hold the given number of circles before needing to grow,
+   * and never keeps more than the given maximum number of circles.
+   * @param capacity the initial number of circles this buffer can hold
+   * @param maxSize the largest number of circles kept at once (UNBOUNDED for no limit)
+   */
+  public CircleBuffer(int capacity, int maxSize) {
+    if (capacity < 1 || maxSize < 1) {
+      throw new IllegalArgumentException("capacity and maximum size must be positive");
+    }
+    capacity = Math.min(capacity, maxSize);
+    this.x = new float[capacity];
+    this.y = new float[capacity];
+    this.diameter = new float[capacity];
+    this.argb = new int[capacity];
+    this.maxSize = maxSize;
+    this.first = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Adds a circle to the end of this buffer.
+   * @param x the x position of the center of the circle
+   * @param y the y position of the center of the circle
+   * @param diameter the diameter of the circle
+   * @param argb the color of the circle, packed as an ARGB integer
+   * @return the index of the added circle
+   * @throws IllegalStateException if the buffer is full (the oldest circles must be evicted first)
+   */
+  public int add(float x, float y, float diameter, int argb) {
+    if (isFull()) {
+      throw new IllegalStateException("the buffer is full (" + this.maxSize + " circles)");
+    }
+    if (this.size - this.first == this.x.length) {
+      grow();
+    }
+    int slot = slotOf(this.size);
+    this.x[slot] = x;
+    this.y[slot] = y;
+    this.diameter[slot] = diameter;
+    this.argb[slot] = argb;
+    return this.size++;
+  }
+
+  /**
+   * Doubles the capacity of all arrays in this buffer (up to its maximum size).
+   * The arrays only grow before the first circle is evicted (see evict), so every circle stays in the slot of its index.
+   */
+  private void grow() {
+    int newCapacity = (int) Math.min((long) this.x.length * 2, this.maxSize);
+    this.x = Arrays.copyOf(this.x, newCapacity);
+    this.y = Arrays.copyOf(this.y, newCapacity);
+    this.diameter = Arrays.copyOf(this.diameter, newCapacity);
+    this.argb = Arrays.copyOf(this.argb, newCapacity);
+  }
+
+  /**
+   * Removes the given number of the oldest circles from this full buffer (their indices are never used again).
+   * Only a full buffer evicts circles, so its arrays already have their maximum size and never grow again.
+   * @param count the number of circles to evict (at most getCount())
+   * @throws IllegalStateException if the buffer isn't full
+   */
+  public void evict(int count) {
+    if (!isFull()) {
+      throw new IllegalStateException("only a full buffer evicts circles");
+    }
+    if (count < 0 || count > getCount()) {
+      throw new IndexOutOfBoundsException("count: " + count + ", circles kept: " + getCount());
+    }
+    this.first += count;
+  }
+
+  /**
+   * Returns the number of circles added to this buffer (the index after the last circle), including evicted circles.
+   * @return the number of circles added
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the index of the oldest circle kept in this buffer (0 if no circle was evicted).
+   * @return the index of the first circle kept
+   */
+  public int getFirst() {
+    return this.first;
+  }
+
+  /**
+   * Returns the number of circles kept in this buffer.
+   * @return the number of circles kept
+   */
+  public int getCount() {
+    return this.size - this.first;
+  }
+
+  /**
+   * Returns the largest number of circles kept at once by this buffer.
+   * @return the maximum size (UNBOUNDED if there is no limit)
+   */
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  /**
+   * Determines if this buffer keeps its maximum number of circles (so the oldest must be evicted before adding more).
+   * @return true if the buffer is full
+   */
+  public boolean isFull() {
+    return getCount() == this.maxSize;
+  }
+
+  /**
+   * Returns the number of slots of this buffer's arrays (the indices of kept circles map onto different slots).
+   * @return the capacity of this buffer
+   */
+  public int getCapacity() {
+    return this.x.length;
+  }
+
+  /**
+   * Returns the slot of the arrays that the circle with the given index is kept in (between 0 and getCapacity() - 1),
+   * e.g. for other classes to keep data about each circle in arrays of the same capacity.
+   * @param i the index of the circle
+   * @return the slot of the circle
+   */
+  public int slotOf(int i) {
+    return i % this.x.length;
+  }
+
+  /**
+   * Removes all circles from this buffer (the arrays are kept, so they can be reused).
+   */
+  public void clear() {
+    this.first = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Returns the x position of the center of the circle with the given index.
+   * @param i the index of the circle
+   * @return the x position of the circle
+   */
+  public float getX(int i) {
+    checkIndex(i);
+    return this.x[slotOf(i)];
+  }
+
+  /**
+   * Returns the y position of the center of the circle with the given index.
+   * @param i the index of the circle
+   * @return the y position of the circle
+   */
+  public float getY(int i) {
+    checkIndex(i);
+    return this.y[slotOf(i)];
+  }
+
+  /**
+   * Returns the diameter of the circle with the given index.
+   * @param i the index of the circle
+   * @return the diameter of the circle
+   */
+  public float getDiameter(int i) {
+    checkIndex(i);
+    return this.diameter[slotOf(i)];
+  }
+
+  /**
+   * Returns the color (packed ARGB integer) of the circle with the given index.
+   * @param i the index of the circle
+   * @return the color of the circle
+   */
+  public int getColor(int i) {
+    checkIndex(i);
+    return this.argb[slotOf(i)];
+  }
+
+  /**
+   * Copies the circles from the given index into the given arrays (bulk read, e.g. for rendering or exports).
+   * Any of the given arrays may be null, if that value is not needed.
+   * @param from the index of the first circle to copy
+   * @param count the number of circles to copy
+   * @param xOut the array to copy the x positions into
+   * @param yOut the array to copy the y positions into
+   * @param diameterOut the array to copy the diameters into
+   * @param argbOut the array to copy the colors into
+   */
+  public void copyTo(int from, int count, float[] xOut, float[] yOut, float[] diameterOut, int[] argbOut) {
+    if (from < this.first || count < 0 || from + count > this.size) {
+      throw new IndexOutOfBoundsException("from: " + from + ", count: " + count + ", circles: " + this.first + "-" + this.size);
+    }
+    //the circles are in at most two runs of slots: up to the end of the arrays, then from their start
+    int slot = count == 0 ? 0 : slotOf(from);
+    int head = Math.min(count, this.x.length - slot);
+    copyRun(slot, 0, head, xOut, yOut, diameterOut, argbOut);
+    copyRun(0, head, count - head, xOut, yOut, diameterOut, argbOut);
+  }
+
+  /**
+   * Copies a run of consecutive slots into the given arrays (the arrays that are null are skipped).
+   */
+  private void copyRun(int slot, int to, int count, float[] xOut, float[] yOut, float[] diameterOut, int[] argbOut) {
+    if (xOut != null) {
+      System.arraycopy(this.x, slot, xOut, to, count);
+    }
+    if (yOut != null) {
+      System.arraycopy(this.y, slot, yOut, to, count);
+    }
+    if (diameterOut != null) {
+      System.arraycopy(this.diameter, slot, diameterOut, to, count);
+    }
+    if (argbOut != null) {
+      System.arraycopy(this.argb, slot, argbOut, to, count);
+    }
+  }
+
+  /**
+   * Checks that the given index is the index of a circle kept in this buffer.
+   * @param i the index to check
+   */
+  private void checkIndex(int i) {
+    if (i < this.first || i >= this.size) {
+      throw new IndexOutOfBoundsException("index: " + i + ", circles: " + this.first + "-" + this.size);
+    }
+  }
+}
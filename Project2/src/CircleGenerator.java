@@ -0,0 +1,148 @@
+/**
+ * This class generates the random circles (position, diameter and color) that a player creates by scoring points.
+ * It is a seedable SplitMix64 generator (the algorithm of java.util.SplittableRandom), so the same seed always 
+ * gives the same circles, and a generator can be split into independent generators (e.g. one for each player),
+ * so the players' circles don't depend on each other and can be generated on different threads.
+ * 
+ * Circles can be generated ahead of time in bulk (precompute), into a ring of slots, so that adding a circle
+ * when a point is scored only copies the next slot into the player's circle buffer. Nothing is allocated
+ * after the generator is created. A generator is not thread-safe.
+ * @author stefanieim
+ */
+public class CircleGenerator {
+  public final static int DEFAULT_CAPACITY = 256; //number of circles that can be generated ahead of time
+  public final static int MAX_DIAMETER = 200; //diameters are between 0 and MAX_DIAMETER - 1
+  public final static int MAX_CHANNEL = 255; //color channels are between 0 and MAX_CHANNEL - 1
+
+  private final static long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L; //increment of the state for each number
+
+  private long state; //the state of the SplitMix64 generator
+  private final float width; //circles are centered between 0 and width
+  private final float height; //circles are centered between 0 and height
+
+  //ring of circles that have been generated ahead of time
+  private final float[] x;
+  private final float[] y;
+  private final float[] diameter;
+  private final int[] argb;
+  private int head; //the slot of the next circle
+  private int count; //the number of circles generated ahead of time
+
+  /**
+   * Creates a new generator with the given seed, for circles centered within the given area.
+   * @param seed the seed of the generator
+   * @param width the width of the area
+   * @param height the height of the area
+   */
+  public CircleGenerator(long seed, float width, float height) {
+    this(seed, width, height, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new generator with the given seed, for circles centered within the given area, 
+   * that can generate up to the given number of circles ahead of time.
+   * @param seed the seed of the generator
+   * @param width the width of the area
+   * @param height the height of the area
+   * @param capacity the number of circles that can be generated ahead of time
+   */
+  public CircleGenerator(long seed, float width, float height, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.state = seed;
+    this.width = width;
+    this.height = height;
+    this.x = new float[capacity];
+    this.y = new float[capacity];
+    this.diameter = new float[capacity];
+    this.argb = new int[capacity];
+    this.head = 0;
+    this.count = 0;
+  }
+
+  /**
+   * Creates a new generator for the same area, whose circles are independent of the circles of this generator.
+   * This advances this generator.
+   * @return the new generator
+   */
+  public CircleGenerator split() {
+    return new CircleGenerator(nextLong(), this.width, this.height, this.x.length);
+  }
+
+  /**
+   * Turns the given generator (e.g. one used by an earlier game) into the generator that split would return:
+   * it gets the same seed, and the circles it had generated ahead of time are dropped. This advances this generator.
+   * @param generator the generator to reuse, which must be for the same area
+   */
+  public void splitInto(CircleGenerator generator) {
+    generator.state = nextLong();
+    generator.head = 0;
+    generator.count = 0;
+  }
+
+  /**
+   * Generates circles ahead of time, until the given number of circles (at most the capacity) are ready.
+   * @param n the number of circles that should be ready
+   */
+  public void precompute(int n) {
+    int target = Math.min(n, this.x.length);
+    while (this.count < target) {
+      int slot = (this.head + this.count) % this.x.length;
+      //same ranges as the circles have always had: diameter 0-199, color channels 0-254, center within the area
+      this.diameter[slot] = nextInt(MAX_DIAMETER);
+      this.argb[slot] = 0xFF000000 | (nextInt(MAX_CHANNEL) << 16) | (nextInt(MAX_CHANNEL) << 8) | nextInt(MAX_CHANNEL);
+      this.x[slot] = nextFloat() * this.width;
+      this.y[slot] = nextFloat() * this.height;
+      this.count++;
+    }
+  }
+
+  /**
+   * Adds the next circle to the end of the given circle buffer. If no circles have been generated ahead of time,
+   * the whole ring is filled first.
+   * @param circles the circle buffer to add the circle to
+   * @return the index of the added circle in the circle buffer
+   */
+  public int addNextTo(CircleBuffer circles) {
+    if (this.count == 0) {
+      precompute(this.x.length);
+    }
+    int slot = this.head;
+    this.head = (this.head + 1) % this.x.length;
+    this.count--;
+    return circles.add(this.x[slot], this.y[slot], this.diameter[slot], this.argb[slot]);
+  }
+
+  /**
+   * Returns the number of circles that have been generated ahead of time.
+   * @return the number of circles ready to be added
+   */
+  public int getPrecomputed() {
+    return this.count;
+  }
+
+  /**
+   * Returns the next 64 random bits (SplitMix64).
+   */
+  private long nextLong() {
+    long z = (this.state += GOLDEN_GAMMA);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Returns a random int between 0 and bound - 1 (from the high 32 bits, scaled without division).
+   */
+  private int nextInt(int bound) {
+    return (int) (((nextLong() >>> 32) * bound) >>> 32);
+  }
+
+  /**
+   * Returns a random float between 0 (inclusive) and 1 (exclusive).
+   */
+  private float nextFloat() {
+    return (nextLong() >>> 40) * 0x1.0p-24f;
+  }
+}
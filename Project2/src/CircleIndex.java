@@ -0,0 +1,352 @@
+import java.util.Arrays;
+
+/**
+ * A spatial index (quadtree) over the circles of one player's circle buffer, which is updated as circles are added.
+ * All circles are opaque and later circles are drawn on top of earlier ones, so when a new circle is added,
+ * every earlier circle that lies completely inside it becomes hidden: it is marked as occluded (so renderers can 
+ * skip it) and removed from the quadtree. Because only visible circles stay in the quadtree, finding the circle 
+ * that is on top at a point (e.g. under the mouse) only looks at a few circles.
+ * 
+ * A circle is only marked as occluded if a single later circle covers it (a circle that is covered by
+ * several later circles together is still drawn), which is cheap to check and never hides a visible circle.
+ * When the circle buffer is bounded, the circles it evicts are removed from the index too (evictTo), and the 
+ * data kept about each circle uses the buffer's slots, so the index stays as small as the buffer.
+ * Circles are kept by their centers, in the leaves of the quadtree (which is always MAX_DEPTH levels deep 
+ * where there are circles), so a query only looks at the circles whose centers are close enough to matter:
+ * a circle can only cover circles whose centers are within its radius, and a point can only be inside 
+ * circles whose centers are within the largest radius of the point.
+ * @author stefanieim
+ */
+public class CircleIndex {
+  public final static int MAX_DEPTH = 5; //the leaves are 1/32 of the width and height of the area (30x17 on the canvas)
+  private final static int INITIAL_NODE_CAPACITY = 4;
+
+  private final float width;
+  private final float height;
+
+  //nodes of the quadtree, by index (node 0 is the root); a node's children are created when first needed
+  private int[][] nodeItems; //the circles kept in each node
+  private int[] nodeSize; //the number of circles kept in each node
+  private int[] firstChild; //the index of the first of the 4 children of each node (-1 if none)
+  private float[] nodeX; //the left edge of each node
+  private float[] nodeY; //the top edge of each node
+  private float[] nodeW; //the width of each node
+  private float[] nodeH; //the height of each node
+  private byte[] nodeDepth;
+  private int nodeCount;
+
+  //per circle (by slot in the circle buffer)
+  private int[] nodeOf; //the node that each circle is kept in (-1 if it is occluded)
+  private int[] slotOf; //the position of each circle in its node's list
+  private int first; //the index of the oldest circle still indexed (the circles before it were evicted)
+  private int size; //the number of circles added
+  private float maxRadius; //the largest radius of all circles added
+  private int occludedCount;
+
+  private final CircleBuffer circles; //the circles being indexed
+  private int[] found; //scratch list of the circles found by a query
+  private final int[] stack = new int[4 * MAX_DEPTH + 4]; //scratch list of the nodes left to visit by a query
+
+  /**
+   * Creates a new empty index over the given circle buffer, for circles centered within the given area.
+   * Circles must be added to the index (in order) after they are added to the buffer.
+   * @param circles the circle buffer to index
+   * @param width the width of the area
+   * @param height the height of the area
+   */
+  public CircleIndex(CircleBuffer circles, float width, float height) {
+    this.circles = circles;
+    this.width = width;
+    this.height = height;
+    this.nodeItems = new int[16][];
+    this.nodeSize = new int[16];
+    this.firstChild = new int[16];
+    this.nodeX = new float[16];
+    this.nodeY = new float[16];
+    this.nodeW = new float[16];
+    this.nodeH = new float[16];
+    this.nodeDepth = new byte[16];
+    this.nodeOf = new int[CircleBuffer.DEFAULT_CAPACITY];
+    this.slotOf = new int[CircleBuffer.DEFAULT_CAPACITY];
+    this.found = new int[16];
+    clear();
+  }
+
+  /**
+   * Removes all circles from this index (e.g. after the circle buffer is cleared).
+   */
+  public void clear() {
+    this.nodeCount = 0;
+    this.first = 0;
+    this.size = 0;
+    this.maxRadius = 0;
+    this.occludedCount = 0;
+    newNode(0, 0, this.width, this.height, 0);
+  }
+
+  /**
+   * Adds the next circle of the circle buffer to this index, and marks every earlier circle that it completely covers
+   * as occluded.
+   * @return the number of circles that became occluded
+   */
+  public int addNext() {
+    int i = this.size;
+    if (i >= this.circles.size()) {
+      throw new IllegalStateException("the circle must be added to the circle buffer first");
+    }
+    if (this.nodeOf.length < this.circles.getCapacity()) { //the buffer grew (so no circle has been evicted yet)
+      this.nodeOf = Arrays.copyOf(this.nodeOf, this.circles.getCapacity());
+      this.slotOf = Arrays.copyOf(this.slotOf, this.circles.getCapacity());
+    }
+    this.size++;
+    float x = this.circles.getX(i);
+    float y = this.circles.getY(i);
+    float r = this.circles.getDiameter(i) / 2;
+    if (r <= 0) { //an empty circle isn't drawn at all
+      this.nodeOf[slot(i)] = -1;
+      this.occludedCount++;
+      return 0;
+    }
+
+    //hide all earlier circles that lie completely inside the new one
+    int hidden = findCovered(x, y, r);
+    for (int k = 0; k < hidden; k++) {
+      remove(this.found[k]);
+    }
+    this.occludedCount += hidden;
+    this.maxRadius = Math.max(this.maxRadius, r);
+    insert(i, x, y);
+    return hidden;
+  }
+
+  /**
+   * Removes the circles that the circle buffer evicted (all circles before its first circle) from this index.
+   * @param first the index of the first circle kept by the circle buffer
+   */
+  public void evictTo(int first) {
+    for (int i = this.first; i < first; i++) {
+      if (this.nodeOf[slot(i)] < 0) {
+        this.occludedCount--;
+      }
+      else {
+        remove(i);
+      }
+    }
+    this.first = Math.max(this.first, first);
+  }
+
+  /**
+   * Determines if the circle with the given index is hidden under a later circle (so it doesn't need to be drawn).
+   * @param i the index of the circle in the circle buffer
+   * @return true if the circle is occluded
+   */
+  public boolean isOccluded(int i) {
+    if (i < this.first || i >= this.size) {
+      throw new IndexOutOfBoundsException("index: " + i + ", circles: " + this.first + "-" + this.size);
+    }
+    return this.nodeOf[slot(i)] < 0;
+  }
+
+  /**
+   * Returns the circle that is on top at the given point (the latest circle that contains it).
+   * @param px the x position of the point
+   * @param py the y position of the point
+   * @return the index of the circle in the circle buffer, or -1 if there is no circle at the point
+   */
+  public int circleAt(float px, float py) {
+    float reach = this.maxRadius;
+    int top = -1;
+    int[] stack = this.stack;
+    int depth = 0;
+    stack[depth++] = 0;
+    while (depth > 0) {
+      int node = stack[--depth];
+      int[] items = this.nodeItems[node];
+      for (int k = 0; k < this.nodeSize[node]; k++) {
+        int j = items[k];
+        if (j > top) {
+          float dx = this.circles.getX(j) - px;
+          float dy = this.circles.getY(j) - py;
+          float rj = this.circles.getDiameter(j) / 2;
+          if (dx * dx + dy * dy <= rj * rj) {
+            top = j;
+          }
+        }
+      }
+      depth = pushChildren(node, px - reach, py - reach, px + reach, py + reach, stack, depth);
+    }
+    return top;
+  }
+
+  /**
+   * Returns the number of circles added to this index (including the evicted circles).
+   * @return the number of circles
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the number of circles that are occluded (and haven't been evicted).
+   * @return the number of occluded circles
+   */
+  public int getOccludedCount() {
+    return this.occludedCount;
+  }
+
+  /**
+   * Returns the number of circles that are visible (not occluded).
+   * @return the number of visible circles
+   */
+  public int getVisibleCount() {
+    return this.size - this.first - this.occludedCount;
+  }
+
+  //QUADTREE helpers------------------------------------
+
+  /**
+   * Adds the circle to the leaf that contains its center (creating nodes as needed).
+   */
+  private void insert(int i, float x, float y) {
+    int node = 0;
+    while (this.nodeDepth[node] < MAX_DEPTH) {
+      if (this.firstChild[node] < 0) {
+        split(node);
+      }
+      node = this.firstChild[node] + quadrantOf(node, x, y);
+    }
+    int slot = this.nodeSize[node];
+    if (slot == this.nodeItems[node].length) {
+      this.nodeItems[node] = Arrays.copyOf(this.nodeItems[node], slot * 2);
+    }
+    this.nodeItems[node][slot] = i;
+    this.nodeSize[node]++;
+    this.nodeOf[slot(i)] = node;
+    this.slotOf[slot(i)] = slot;
+  }
+
+  /**
+   * Removes the circle from its node (the last circle of the node takes its place), and marks it as occluded.
+   */
+  private void remove(int i) {
+    int node = this.nodeOf[slot(i)];
+    int last = --this.nodeSize[node];
+    int moved = this.nodeItems[node][last];
+    this.nodeItems[node][this.slotOf[slot(i)]] = moved;
+    this.slotOf[slot(moved)] = this.slotOf[slot(i)];
+    this.nodeOf[slot(i)] = -1;
+  }
+
+  /**
+   * Returns the slot of the circle with the given index in the per-circle arrays (its slot in the circle buffer).
+   */
+  private int slot(int i) {
+    return this.circles.slotOf(i);
+  }
+
+  /**
+   * Finds all circles in the quadtree that lie completely inside the given circle (into the found list),
+   * only visiting the nodes that intersect the circle's bounding box (where the centers of those circles must be).
+   * @return the number of circles found
+   */
+  private int findCovered(float x, float y, float r) {
+    float left = x - r, top = y - r, right = x + r, bottom = y + r;
+    int count = 0;
+    int[] stack = this.stack;
+    int depth = 0;
+    stack[depth++] = 0;
+    while (depth > 0) {
+      int node = stack[--depth];
+      int[] items = this.nodeItems[node];
+      for (int k = 0; k < this.nodeSize[node]; k++) {
+        int j = items[k];
+        float rj = this.circles.getDiameter(j) / 2;
+        if (rj <= r) {
+          float dx = this.circles.getX(j) - x;
+          float dy = this.circles.getY(j) - y;
+          if ((r - rj) * (r - rj) >= dx * dx + dy * dy) {
+            if (count == this.found.length) {
+              this.found = Arrays.copyOf(this.found, count * 2);
+            }
+            this.found[count++] = j;
+          }
+        }
+      }
+      depth = pushChildren(node, left, top, right, bottom, stack, depth);
+    }
+    return count;
+  }
+
+  /**
+   * Adds the children of the given node that intersect the given rectangle onto the stack.
+   * @return the new number of nodes on the stack
+   */
+  private int pushChildren(int node, float left, float top, float right, float bottom, int[] stack, int depth) {
+    int child = this.firstChild[node];
+    if (child >= 0) {
+      for (int c = child; c < child + 4; c++) {
+        if (this.nodeX[c] <= right && left <= this.nodeX[c] + this.nodeW[c]
+            && this.nodeY[c] <= bottom && top <= this.nodeY[c] + this.nodeH[c]) {
+          stack[depth++] = c;
+        }
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Returns which child (0 to 3) of the given node contains the given point.
+   */
+  private int quadrantOf(int node, float x, float y) {
+    int quadrant = 0;
+    if (x >= this.nodeX[node] + this.nodeW[node] / 2) {
+      quadrant |= 1;
+    }
+    if (y >= this.nodeY[node] + this.nodeH[node] / 2) {
+      quadrant |= 2;
+    }
+    return quadrant;
+  }
+
+  /**
+   * Creates the 4 children of the given node.
+   */
+  private void split(int node) {
+    float w = this.nodeW[node] / 2;
+    float h = this.nodeH[node] / 2;
+    int depth = this.nodeDepth[node] + 1;
+    this.firstChild[node] = this.nodeCount;
+    newNode(this.nodeX[node], this.nodeY[node], w, h, depth);
+    newNode(this.nodeX[node] + w, this.nodeY[node], w, h, depth);
+    newNode(this.nodeX[node], this.nodeY[node] + h, w, h, depth);
+    newNode(this.nodeX[node] + w, this.nodeY[node] + h, w, h, depth);
+  }
+
+  /**
+   * Adds a new empty node with the given bounds.
+   */
+  private void newNode(float x, float y, float w, float h, int depth) {
+    int node = this.nodeCount++;
+    if (node == this.nodeSize.length) {
+      int capacity = node * 2;
+      this.nodeItems = Arrays.copyOf(this.nodeItems, capacity);
+      this.nodeSize = Arrays.copyOf(this.nodeSize, capacity);
+      this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+      this.nodeX = Arrays.copyOf(this.nodeX, capacity);
+      this.nodeY = Arrays.copyOf(this.nodeY, capacity);
+      this.nodeW = Arrays.copyOf(this.nodeW, capacity);
+      this.nodeH = Arrays.copyOf(this.nodeH, capacity);
+      this.nodeDepth = Arrays.copyOf(this.nodeDepth, capacity);
+    }
+    if (this.nodeItems[node] == null) {
+      this.nodeItems[node] = new int[INITIAL_NODE_CAPACITY];
+    }
+    this.nodeSize[node] = 0;
+    this.firstChild[node] = -1;
+    this.nodeX[node] = x;
+    this.nodeY[node] = y;
+    this.nodeW[node] = w;
+    this.nodeH[node] = h;
+    this.nodeDepth[node] = (byte) depth;
+  }
+}
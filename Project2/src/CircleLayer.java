@@ -0,0 +1,118 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import processing.core.PGraphics;
+
+/**
+ * This class is the offscreen layer that all of one player's circles are drawn onto (once per circle), so that
+ * a frame only has to draw the whole layer onto the canvas, in a single call, no matter how many circles there are.
+ *
+ * The circles are drawn straight onto the layer's Java2D image, with a graphics that stays open for the whole game:
+ * adding a circle is one fill (with the circle's color, created once when the circle is added), instead of a
+ * beginDraw, fill, ellipse and endDraw on a Processing graphics (whose endDraw copies all of the layer's pixels,
+ * which are copied again the next time the layer is drawn). The canvas must be drawn by the Java2D renderer.
+ *
+ * When the player's circle buffer evicts its oldest circles, the layer is redrawn from the circles that are kept,
+ * and the oldest of them can be drawn fading out (more transparent the older they are) before they are evicted.
+ * @author stefanieim
+ */
+public class CircleLayer {
+  private final BufferedImage image; //the drawn circles (transparent where there are no circles)
+  private final Graphics2D graphics; //draws onto the image (kept open)
+  private final Ellipse2D.Float ellipse = new Ellipse2D.Float(); //the shape of the circle being drawn (reused)
+  private Color[] colors; //the color of each circle, by slot in the player's circle buffer
+
+  /**
+   * Creates a new empty layer of the given size.
+   * @param width the width of the layer (the width of the canvas)
+   * @param height the height of the layer (the height of the canvas)
+   */
+  public CircleLayer(int width, int height) {
+    this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    this.graphics = this.image.createGraphics();
+    this.graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON); //like smooth()
+    this.colors = new Color[CircleBuffer.DEFAULT_CAPACITY];
+  }
+
+  /**
+   * Draws the circle with the given index in the circle buffer onto this layer (over the circles already drawn).
+   * @param circles the player's circle buffer
+   * @param i the index of the circle
+   */
+  public void add(CircleBuffer circles, int i) {
+    if (this.colors.length < circles.getCapacity()) { //the buffer grew (so no circle has been evicted yet)
+      this.colors = Arrays.copyOf(this.colors, circles.getCapacity());
+    }
+    Color color = new Color(circles.getColor(i), true);
+    this.colors[circles.slotOf(i)] = color;
+    fill(circles, i, color);
+  }
+
+  /**
+   * Redraws the whole layer from the circle buffer (e.g. if the layer has been lost or changed).
+   * Circles that are completely hidden under a later circle are skipped.
+   * @param circles the player's circle buffer (whose circles have all been added to this layer)
+   * @param index the quadtree of the player's circles, that knows which circles are hidden
+   */
+  public void redraw(CircleBuffer circles, CircleIndex index) {
+    redraw(circles, index, 0);
+  }
+
+  /**
+   * Redraws the whole layer from the circles kept by the circle buffer, with the given number of the oldest circles
+   * fading out: the oldest is the most transparent. Circles that are completely hidden under a later circle are
+   * skipped, except for the fading circles (the circle hiding them might be fading too).
+   * @param circles the player's circle buffer (whose circles have all been added to this layer)
+   * @param index the quadtree of the player's circles, that knows which circles are hidden
+   * @param fading the number of the oldest circles to draw fading out (0 for none)
+   */
+  public void redraw(CircleBuffer circles, CircleIndex index, int fading) {
+    clear();
+    int first = circles.getFirst();
+    for (int i = first; i < circles.size(); i++) {
+      int age = i - first; //0 for the oldest circle
+      if (age < fading) {
+        int alpha = 255 * (age + 1) / (fading + 1);
+        fill(circles, i, new Color((alpha << 24) | (circles.getColor(i) & 0xFFFFFF), true));
+      }
+      else if (!index.isOccluded(i)) {
+        fill(circles, i, this.colors[circles.slotOf(i)]);
+      }
+    }
+  }
+
+  /**
+   * Removes all circles from this layer.
+   */
+  public void clear() {
+    Composite composite = this.graphics.getComposite();
+    this.graphics.setComposite(AlphaComposite.Clear);
+    this.graphics.fillRect(0, 0, this.image.getWidth(), this.image.getHeight());
+    this.graphics.setComposite(composite);
+  }
+
+  /**
+   * Draws this layer onto the top left corner of the given (Java2D) graphics, e.g. the canvas,
+   * within the graphics' current clip.
+   * @param pg the graphics to draw onto, which must be drawing (between beginDraw and endDraw)
+   */
+  public void draw(PGraphics pg) {
+    ((Graphics2D) pg.getNative()).drawImage(this.image, 0, 0, null);
+  }
+
+  /**
+   * Fills the circle with the given index, with the given color.
+   */
+  private void fill(CircleBuffer circles, int i, Color color) {
+    float diameter = circles.getDiameter(i);
+    this.ellipse.setFrame(circles.getX(i) - diameter/2, circles.getY(i) - diameter/2, diameter, diameter);
+    this.graphics.setColor(color);
+    this.graphics.fill(this.ellipse);
+  }
+}
@@ -1,50 +1,162 @@
-import processing.core.PApplet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Represents a timer that counts down from the DURATION.
+ * Represents a timer that counts down from its duration.
+ * The timer works on a monotonic clock in nanoseconds (the time is always given by the caller),
+ * and it has an exact deadline (start time + duration), so whether a point in time is within the
+ * timer's round doesn't depend on how often the timer is checked (e.g. on the frame rate).
+ * A listener can be notified once when the deadline is reached.
  * @author stefanieim
  *
  */
 public class CountdownTimer {
-  public static int DURATION;
-  private int startTime;  //saved time
-  public int currentCountdownTime; //current countdown time
-  
+  private final long duration; //in nanoseconds
+  private volatile long startTime; //in nanoseconds
+  private volatile long deadline; //startTime + duration
+  private volatile boolean started;
+  private final AtomicBoolean deadlineFired; //true once the deadline listener has been notified for the current round
+  private volatile Runnable deadlineListener;
+
   /**
    * Creates a new countdown timer that counts down to zero from the given time limit.
    * @param timeLimit the time (in seconds) to count down from
    */
   public CountdownTimer(int timeLimit) {
-    CountdownTimer.DURATION = timeLimit;
-    this.startTime = timeLimit;
-    this.currentCountdownTime = startTime;
+    this(timeLimit * 1000000000L);
+  }
+
+  /**
+   * Creates a new countdown timer that counts down to zero from the given duration.
+   * @param durationNanos the time (in nanoseconds) to count down from
+   */
+  public CountdownTimer(long durationNanos) {
+    if (durationNanos <= 0) {
+      throw new IllegalArgumentException("duration must be positive");
+    }
+    this.duration = durationNanos;
+    this.deadlineFired = new AtomicBoolean(false);
+    reset();
   }
 
   /**
-   * Sets the start time of this timer (the saved timestamp at the point in which the Processing class calls on this method)
-   * @param millis the timestamp (in milliseconds) at which the timer should start
+   * Starts this timer at the given time (the saved timestamp at the point in which the GameEngine calls on this method).
+   * @param nanos the timestamp (in nanoseconds) at which the timer should start
    */
-  public void setStartTime(int millis) {
-    this.startTime = millis;
+  public void start(long nanos) {
+    this.startTime = nanos;
+    this.deadline = nanos + this.duration;
+    this.deadlineFired.set(false);
+    this.started = true;
   }
-  
+
   /**
-   * Calculates and updates the current countdown time, based on the duration(time limit),
-   * and the given current timestamp from the Processing class.
-   * 
-   * @param timestamp the given current time stamp from the Processing class.
+   * Stops this timer and sets it back to its full duration (as if it was never started).
    */
-  public void setCurrentTime(int timestamp) {
-    //the current countdown time is the total duration minus the amount of time that has passed since the saved start time
-    this.currentCountdownTime = DURATION - (timestamp - this.startTime)/1000;
+  public void reset() {
+    this.started = false;
+    this.startTime = 0;
+    this.deadline = 0;
+    this.deadlineFired.set(false);
   }
 
   /**
-   * Determines if the timer has ended (i.e. the current countdown time becomes zero)
+   * Returns the duration of this timer.
+   * @return the duration of this timer, in nanoseconds
+   */
+  public long getDuration() {
+    return this.duration;
+  }
+
+  /**
+   * Returns the exact time at which this timer ends (only meaningful once it has been started).
+   * @return the deadline of this timer, in nanoseconds
+   */
+  public long getDeadline() {
+    return this.deadline;
+  }
+
+  /**
+   * Determines if this timer has been started.
+   * @return true if this timer has been started
+   */
+  public boolean isStarted() {
+    return this.started;
+  }
+
+  /**
+   * Returns the time remaining at the given timestamp: the full duration if the timer hasn't started yet,
+   * and 0 once the deadline has been reached.
+   * @param nanos the current timestamp, in nanoseconds
+   * @return the remaining time, in nanoseconds
+   */
+  public long getRemainingNanos(long nanos) {
+    if (!this.started) {
+      return this.duration;
+    }
+    return Math.max(0, Math.min(this.duration, this.deadline - nanos));
+  }
+
+  /**
+   * Returns the time remaining at the given timestamp in milliseconds (e.g. for the scoreboard),
+   * rounded up, so that the remaining time only shows 0 once the timer has actually ended.
+   * @param nanos the current timestamp, in nanoseconds
+   * @return the remaining time, in milliseconds
+   */
+  public int getRemainingMillis(long nanos) {
+    return (int) ((getRemainingNanos(nanos) + 999999L) / 1000000L);
+  }
+
+  /**
+   * Determines if the given timestamp is within this timer's round, i.e. at or after the start time
+   * and before the deadline. This doesn't depend on when the timer was last checked.
+   * @param nanos the timestamp (in nanoseconds) to check
+   * @return true if the timestamp is within this timer's round
+   */
+  public boolean isRunningAt(long nanos) {
+    return this.started && nanos - this.startTime >= 0 && nanos - this.deadline < 0;
+  }
+
+  /**
+   * Determines if the timer has ended at the given timestamp (i.e. the deadline has been reached).
+   * @param nanos the current timestamp, in nanoseconds
    * @return true if the timer has ended.
    */
-  public boolean hasEnded() {
-    return this.currentCountdownTime <= 0;
+  public boolean hasEnded(long nanos) {
+    return this.started && nanos - this.deadline >= 0;
+  }
+
+  /**
+   * Sets the listener that is notified (once per round) when the deadline is reached.
+   * The listener is notified by poll, on the thread that calls it.
+   * @param listener the listener to notify, or null for none
+   */
+  public void setDeadlineListener(Runnable listener) {
+    this.deadlineListener = listener;
+  }
+
+  /**
+   * Checks the timer at the given timestamp, and notifies the deadline listener if the timer has ended
+   * (and the listener hasn't been notified yet for this round).
+   * @param nanos the current timestamp, in nanoseconds
+   * @return true if the timer has ended
+   */
+  public boolean poll(long nanos) {
+    if (hasEnded(nanos)) {
+      fireDeadline();
+      return true;
+    }
+    return false;
   }
 
+  /**
+   * Notifies the deadline listener, if it hasn't been notified yet for this round.
+   */
+  private void fireDeadline() {
+    if (this.started && this.deadlineFired.compareAndSet(false, true)) {
+      Runnable listener = this.deadlineListener;
+      if (listener != null) {
+        listener.run();
+      }
+    }
+  }
 }
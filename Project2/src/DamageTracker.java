@@ -0,0 +1,268 @@
+/**
+ * Collects the regions of the canvas that changed since the last frame ("dirty rectangles"), so that only
+ * those regions are repainted. The canvas keeps what was painted in the previous frames, so a frame in which
+ * nothing changed doesn't need to be painted at all.
+ *
+ * Parts of the screen report a rectangle either directly (add) or through a region with a key (report): the key
+ * sums up everything that the region shows (e.g. the remaining time and score of a scoreboard), and the region's
+ * rectangle is only dirty when its key changed. Overlapping rectangles are merged, and when there are too many
+ * rectangles (or they cover most of the canvas), the whole canvas is repainted instead.
+ * @author stefanieim
+ */
+public class DamageTracker {
+  public final static int MAX_RECTS = 8; //more rectangles than this are merged together
+  private final static int PAD = 2; //pixels added around each rectangle (for strokes and anti-aliasing)
+  private final static long NO_KEY = Long.MIN_VALUE; //key of a region that hasn't been reported yet
+
+  private final int width, height; //size of the canvas
+  private final int[] left, top, right, bottom; //the dirty rectangles of the current frame (right and bottom exclusive)
+  private int count; //number of dirty rectangles
+  private boolean full; //true if the whole canvas has to be repainted
+  private final long[] regionKeys; //the last reported key of each region
+
+  //statistics of all frames so far
+  private long fullFrames, partialFrames, skippedFrames;
+  private long paintedPixels;
+
+  /**
+   * Creates a new damage tracker for a canvas of the given size. The first frame is a full repaint.
+   * @param width the width of the canvas
+   * @param height the height of the canvas
+   * @param regions the number of regions that report their rectangle with a key
+   */
+  public DamageTracker(int width, int height, int regions) {
+    this.width = width;
+    this.height = height;
+    this.left = new int[MAX_RECTS];
+    this.top = new int[MAX_RECTS];
+    this.right = new int[MAX_RECTS];
+    this.bottom = new int[MAX_RECTS];
+    this.regionKeys = new long[regions];
+    invalidate();
+  }
+
+  /**
+   * Reports the current key of a region: if it is different from the key reported last time,
+   * the region's rectangle is added to the dirty rectangles.
+   * @param region the index of the region
+   * @param key the key that sums up what the region shows
+   * @param x the x position of the top left corner of the region
+   * @param y the y position of the top left corner of the region
+   * @param w the width of the region
+   * @param h the height of the region
+   */
+  public void report(int region, long key, int x, int y, int w, int h) {
+    if (this.regionKeys[region] != key) {
+      this.regionKeys[region] = key;
+      add(x, y, w, h);
+    }
+  }
+
+  /**
+   * Adds a dirty rectangle (it is cut to the canvas, and merged with the rectangles it overlaps).
+   * @param x the x position of the top left corner
+   * @param y the y position of the top left corner
+   * @param w the width of the rectangle
+   * @param h the height of the rectangle
+   */
+  public void add(int x, int y, int w, int h) {
+    if (this.full) {
+      return;
+    }
+    int l = Math.max(0, x - PAD);
+    int t = Math.max(0, y - PAD);
+    int r = Math.min(this.width, x + w + PAD);
+    int b = Math.min(this.height, y + h + PAD);
+    if (l >= r || t >= b) {
+      return; //outside of the canvas
+    }
+    //merge with every rectangle it overlaps (the merged rectangle can overlap more of them)
+    for (int i = 0; i < this.count; i++) {
+      if (l < this.right[i] && this.left[i] < r && t < this.bottom[i] && this.top[i] < b) {
+        l = Math.min(l, this.left[i]);
+        t = Math.min(t, this.top[i]);
+        r = Math.max(r, this.right[i]);
+        b = Math.max(b, this.bottom[i]);
+        remove(i);
+        i = -1;
+      }
+    }
+    if (this.count == MAX_RECTS) { //too many: merge with the rectangle that grows the least
+      int best = 0;
+      long bestGrowth = Long.MAX_VALUE;
+      for (int i = 0; i < this.count; i++) {
+        long union = (long) (Math.max(r, this.right[i]) - Math.min(l, this.left[i]))
+            * (Math.max(b, this.bottom[i]) - Math.min(t, this.top[i]));
+        long growth = union - area(i);
+        if (growth < bestGrowth) {
+          best = i;
+          bestGrowth = growth;
+        }
+      }
+      l = Math.min(l, this.left[best]);
+      t = Math.min(t, this.top[best]);
+      r = Math.max(r, this.right[best]);
+      b = Math.max(b, this.bottom[best]);
+      remove(best);
+    }
+    this.left[this.count] = l;
+    this.top[this.count] = t;
+    this.right[this.count] = r;
+    this.bottom[this.count] = b;
+    this.count++;
+    if (getDirtyPixels() * 4 >= (long) this.width * this.height * 3) {
+      invalidate(); //most of the canvas is dirty, so it is painted at once
+    }
+  }
+
+  /**
+   * Marks the whole canvas as dirty (e.g. when the game state changed).
+   */
+  public void invalidate() {
+    this.full = true;
+    this.count = 0;
+  }
+
+  /**
+   * Ends the current frame: the frame is counted in the statistics, and all dirty rectangles are removed.
+   */
+  public void endFrame() {
+    if (this.full) {
+      this.fullFrames++;
+    }
+    else if (this.count == 0) {
+      this.skippedFrames++;
+    }
+    else {
+      this.partialFrames++;
+    }
+    this.paintedPixels += getDirtyPixels();
+    this.full = false;
+    this.count = 0;
+  }
+
+  /**
+   * Determines if the whole canvas has to be repainted in the current frame.
+   * @return true if the whole canvas is dirty
+   */
+  public boolean isFull() {
+    return this.full;
+  }
+
+  /**
+   * Determines if nothing has to be repainted in the current frame.
+   * @return true if nothing is dirty
+   */
+  public boolean isEmpty() {
+    return !this.full && this.count == 0;
+  }
+
+  /**
+   * Returns the number of dirty rectangles of the current frame (0 if the whole canvas is dirty).
+   * @return the number of dirty rectangles
+   */
+  public int size() {
+    return this.count;
+  }
+
+  /**
+   * Returns the x position of the top left corner of a dirty rectangle.
+   * @param i the index of the rectangle
+   * @return the x position of the rectangle
+   */
+  public int getX(int i) {
+    return this.left[i];
+  }
+
+  /**
+   * Returns the y position of the top left corner of a dirty rectangle.
+   * @param i the index of the rectangle
+   * @return the y position of the rectangle
+   */
+  public int getY(int i) {
+    return this.top[i];
+  }
+
+  /**
+   * Returns the width of a dirty rectangle.
+   * @param i the index of the rectangle
+   * @return the width of the rectangle
+   */
+  public int getWidth(int i) {
+    return this.right[i] - this.left[i];
+  }
+
+  /**
+   * Returns the height of a dirty rectangle.
+   * @param i the index of the rectangle
+   * @return the height of the rectangle
+   */
+  public int getHeight(int i) {
+    return this.bottom[i] - this.top[i];
+  }
+
+  /**
+   * Returns the number of frames so far in which the whole canvas was repainted.
+   * @return the number of full frames
+   */
+  public long getFullFrames() {
+    return this.fullFrames;
+  }
+
+  /**
+   * Returns the number of frames so far in which only some regions of the canvas were repainted.
+   * @return the number of partial frames
+   */
+  public long getPartialFrames() {
+    return this.partialFrames;
+  }
+
+  /**
+   * Returns the number of frames so far in which nothing was repainted.
+   * @return the number of skipped frames
+   */
+  public long getSkippedFrames() {
+    return this.skippedFrames;
+  }
+
+  /**
+   * Returns the fraction of pixels that were repainted over all frames so far (1 if every frame was a full repaint).
+   * @return the repainted fraction, between 0 and 1
+   */
+  public double getRepaintedFraction() {
+    long frames = this.fullFrames + this.partialFrames + this.skippedFrames;
+    return frames == 0 ? 0 : (double) this.paintedPixels / ((double) frames * this.width * this.height);
+  }
+
+  /**
+   * Returns the number of pixels to repaint in the current frame.
+   */
+  private long getDirtyPixels() {
+    if (this.full) {
+      return (long) this.width * this.height;
+    }
+    long pixels = 0;
+    for (int i = 0; i < this.count; i++) {
+      pixels += area(i);
+    }
+    return pixels;
+  }
+
+  /**
+   * Returns the area of the dirty rectangle with the given index.
+   */
+  private long area(int i) {
+    return (long) (this.right[i] - this.left[i]) * (this.bottom[i] - this.top[i]);
+  }
+
+  /**
+   * Removes the dirty rectangle with the given index (the last rectangle takes its place).
+   */
+  private void remove(int i) {
+    this.count--;
+    this.left[i] = this.left[this.count];
+    this.top[i] = this.top[this.count];
+    this.right[i] = this.right[this.count];
+    this.bottom[i] = this.bottom[this.count];
+  }
+}
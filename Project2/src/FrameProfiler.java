@@ -0,0 +1,183 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This class records how long each part of a frame (and each input event) takes, 
+ * into a LatencyHistogram for every GameState and every section of the game loop.
+ * Recording is cheap (two System.nanoTime calls and no allocation), so it can stay enabled while playing.
+ * The recorded timings can be shown on screen (frame time and input-to-render latency),
+ * and dumped to a csv file for offline analysis.
+ * @author stefanieim
+ */
+public class FrameProfiler {
+  /**
+   * The sections of the game loop that are timed.
+   */
+  public enum Section {
+    FRAME,           //the whole draw() call
+    CIRCLES,         //drawListOfCircles
+    HEADER,          //drawHeader (including scoreboards)
+    SCOREBOARD,      //drawScoreBoard
+    BUTTON,          //drawButton
+    POPUP,           //the pop-up messages (start, time's up, final, reset)
+    KEY,             //keyPressed
+    MOUSE,           //mouseClicked
+    INPUT_TO_RENDER; //from an input event to the end of the next frame that was drawn
+  }
+
+  private final LatencyHistogram[][] histograms; //[game state][section]
+  private GameState state; //the state of the game during the current frame
+  private long pendingInput; //the time of the earliest input that hasn't been rendered yet, 0 if none
+  private boolean enabled;
+
+  /**
+   * Creates a new enabled profiler with empty histograms.
+   */
+  public FrameProfiler() {
+    this.histograms = new LatencyHistogram[GameState.values().length][Section.values().length];
+    for (int i = 0; i < this.histograms.length; i++) {
+      for (int j = 0; j < this.histograms[i].length; j++) {
+        this.histograms[i][j] = new LatencyHistogram();
+      }
+    }
+    this.state = GameState.INTRO;
+    this.pendingInput = 0;
+    this.enabled = true;
+  }
+
+  /**
+   * Starts a frame in the given game state (the following timings are recorded for this state).
+   * @param state the current state of the game
+   * @return the start time of the frame
+   */
+  public long beginFrame(GameState state) {
+    this.state = state;
+    return start();
+  }
+
+  /**
+   * Ends the frame that was started at the given time, and records the input-to-render latency
+   * of any input that happened before this frame.
+   * @param frameStart the start time of the frame (from beginFrame)
+   */
+  public void endFrame(long frameStart) {
+    if (!this.enabled) {
+      return;
+    }
+    long now = System.nanoTime();
+    record(this.state, Section.FRAME, now - frameStart);
+    if (this.pendingInput != 0) {
+      record(this.state, Section.INPUT_TO_RENDER, now - this.pendingInput);
+      this.pendingInput = 0;
+    }
+  }
+
+  /**
+   * Returns the start time of a timed section.
+   * @return the current time in nanoseconds (0 if this profiler is disabled)
+   */
+  public long start() {
+    return this.enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the time since the given start time for the given section, in the current frame's state.
+   * @param section the section that was timed
+   * @param start the start time of the section (from start)
+   */
+  public void stop(Section section, long start) {
+    if (this.enabled) {
+      record(this.state, section, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Records the time since the given start time of an input event (key or mouse), in the given state.
+   * The input is also remembered, so its input-to-render latency is recorded at the end of the next frame.
+   * @param state the state of the game when the input happened
+   * @param section the section of the input (KEY or MOUSE)
+   * @param start the time at which the input arrived (from start)
+   */
+  public void stopInput(GameState state, Section section, long start) {
+    if (!this.enabled) {
+      return;
+    }
+    record(state, section, System.nanoTime() - start);
+    markInput(start);
+  }
+
+  /**
+   * Remembers that an input arrived at the given time, so its input-to-render latency 
+   * is recorded at the end of the next frame (only the earliest input before a frame is kept).
+   * @param arrival the time at which the input arrived, in nanoseconds (from System.nanoTime)
+   */
+  public void markInput(long arrival) {
+    if (this.enabled && this.pendingInput == 0) {
+      this.pendingInput = arrival;
+    }
+  }
+
+  /**
+   * Records the given value in the histogram of the given state and section.
+   */
+  private void record(GameState state, Section section, long nanos) {
+    this.histograms[state.ordinal()][section.ordinal()].record(nanos);
+  }
+
+  /**
+   * Returns the histogram of the given state and section.
+   * @param state the game state
+   * @param section the section of the game loop
+   * @return the histogram of the given state and section
+   */
+  public LatencyHistogram getHistogram(GameState state, Section section) {
+    return this.histograms[state.ordinal()][section.ordinal()];
+  }
+
+  /**
+   * Returns the histogram of the given section in the state of the current frame.
+   * @param section the section of the game loop
+   * @return the histogram of the given section in the current state
+   */
+  public LatencyHistogram getHistogram(Section section) {
+    return getHistogram(this.state, section);
+  }
+
+  /**
+   * Enables or disables recording.
+   * @param enabled true to record timings
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Determines if this profiler records timings.
+   * @return true if this profiler is enabled
+   */
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Writes a summary of every non-empty histogram (one line per state and section) to the csv file with the given path.
+   * All times are in nanoseconds.
+   * @param path the path of the csv file
+   * @throws IOException if the file can't be written
+   */
+  public void writeCsv(String path) throws IOException {
+    try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+      out.println("state,section,count,min_ns,mean_ns,p50_ns,p90_ns,p99_ns,p999_ns,max_ns");
+      for (GameState state : GameState.values()) {
+        for (Section section : Section.values()) {
+          LatencyHistogram h = getHistogram(state, section);
+          if (h.getCount() > 0) {
+            out.printf("%s,%s,%d,%d,%.0f,%d,%d,%d,%d,%d%n", state, section, h.getCount(), h.getMin(), h.getMean(),
+                h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getPercentile(99.9), h.getMax());
+          }
+        }
+      }
+    }
+  }
+}
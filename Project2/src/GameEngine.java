@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class applies the rules of the game to a GameModel, without needing a Processing window.
+ * It owns the state machine over GameState (INTRO -> PLAYING_STALE -> PLAYING_ACTIVE -> ... -> FINAL), 
+ * and reads the time from the given time source, so that it can be driven by the Processing class 
+ * (the view) as well as by tests and batch simulations.
+ * If a scheduler is given, the end of each round is also announced to a listener at the exact deadline,
+ * instead of only when the timer is next updated.
+ * If a results store is given, the result of every completed round is appended to it.
+ * In a tournament, the game is played as a series of two-player matches scheduled by the tournament,
+ * reusing the same two players for every match.
+ * @author stefanieim
+ */
+public class GameEngine {
+  private final TimeSource clock; //the source of time for the players' timers
+  private final ScheduledExecutorService scheduler; //runs the round end listener at each deadline (null to only poll)
+  private volatile Runnable roundEndListener; //notified once when each player's time is up
+  private ResultsStore results; //where the results of completed rounds are kept (null to not keep them)
+  private GameModel model; //the game model (stores game data)
+  private Tournament tournament; //the tournament being played (null for a single game)
+  private final int[] match = new int[2]; //the entrant ids of the current tournament match
+  private final int[] matchScores = new int[2]; //the scores of the current tournament match
+  private int matchRound; //the tournament round of the current match (starting at 1)
+
+  /**
+   * Creates a new engine that reads the time from the system clock.
+   */
+  public GameEngine() {
+    this(TimeSource.SYSTEM);
+  }
+
+  /**
+   * Creates a new engine with a new game model, that reads the time from the given time source.
+   * @param clock the source of time for the players' timers
+   */
+  public GameEngine(TimeSource clock) {
+    this(clock, null);
+  }
+
+  /**
+   * Creates a new engine with a new game model, that reads the time from the given time source,
+   * and uses the given scheduler to notify the round end listener at the exact end of each round.
+   * @param clock the source of time for the players' timers
+   * @param scheduler the scheduler that runs the round end listener (null to only notify it from update)
+   */
+  public GameEngine(TimeSource clock, ScheduledExecutorService scheduler) {
+    this.clock = clock;
+    this.scheduler = scheduler;
+    this.model = new GameModel();
+  }
+
+  /**
+   * Sets the listener that is notified once when the current player's time is up. 
+   * With a scheduler, it is run on the scheduler's thread at the deadline; otherwise, 
+   * it is run by the first update() after the deadline.
+   * @param listener the listener to notify, or null for none
+   */
+  public void setRoundEndListener(Runnable listener) {
+    this.roundEndListener = listener;
+  }
+
+  /**
+   * Sets the store that the result of every completed round is appended to.
+   * @param results the results store, or null to not keep results
+   */
+  public void setResultsStore(ResultsStore results) {
+    this.results = results;
+  }
+
+  /**
+   * Returns the all-time rank of the given score among all results in the results store
+   * (1 for the best score ever).
+   * @param score the score to rank
+   * @return the rank of the score, or -1 if there is no results store
+   */
+  public int getHistoricalRank(int score) {
+    return this.results == null ? -1 : this.results.rankOf(score);
+  }
+
+  /**
+   * Returns the number of results in the results store.
+   * @return the number of results, or 0 if there is no results store
+   */
+  public int getHistoricalCount() {
+    return this.results == null ? 0 : this.results.size();
+  }
+
+  /**
+   * Returns the game model of this engine.
+   * @return the game model of this engine
+   */
+  public GameModel getModel() {
+    return this.model;
+  }
+
+  /**
+   * Returns the number of players in this game (0 if the number of players has not been chosen yet).
+   * @return the number of players in this game
+   */
+  public int getNumOfPlayers() {
+    return this.model.getPlayersList().size();
+  }
+
+  /**
+   * Determines if the number of players has already been chosen.
+   * @return true if the players have been added to the game
+   */
+  public boolean hasPlayers() {
+    return getNumOfPlayers() > 0;
+  }
+
+  /**
+   * Returns the player whose turn it is.
+   * @return the player whose turn it is
+   */
+  public Player getCurrentPlayer() {
+    return this.model.getPlayer(this.model.getTurn());
+  }
+
+  /**
+   * Returns the current time of this engine's time source, in nanoseconds
+   * (e.g. to timestamp input events, so they can be passed to press(long) later).
+   * @return the current time in nanoseconds
+   */
+  public long nanoTime() {
+    return this.clock.nanoTime();
+  }
+
+  /**
+   * Adds the given number of players to the game (only once, during the INTRO state).
+   * @param howMany the number of players in this game
+   * @return true if the players were added
+   */
+  public boolean choosePlayers(int howMany) {
+    if (this.model.getGameState() != GameState.INTRO || hasPlayers() || howMany < 1) {
+      return false;
+    }
+    this.model.addPlayers(howMany);
+    return true;
+  }
+
+  /**
+   * Starts the given tournament (only during the INTRO state, before the number of players is chosen):
+   * two players are added to the game, and the first match is loaded.
+   * @param tournament the tournament to play
+   * @return true if the tournament was started
+   */
+  public boolean startTournament(Tournament tournament) {
+    if (this.model.getGameState() != GameState.INTRO || hasPlayers() || !tournament.hasNextMatch()) {
+      return false;
+    }
+    this.tournament = tournament;
+    this.model.addPlayers(2);
+    loadNextMatch();
+    return true;
+  }
+
+  /**
+   * Returns the tournament being played.
+   * @return the tournament, or null if this is a single game
+   */
+  public Tournament getTournament() {
+    return this.tournament;
+  }
+
+  /**
+   * Returns the entrant id in the tournament of the player with the given key, for the current match.
+   * @param playerKey the key of the player (0 or 1)
+   * @return the id of the entrant
+   */
+  public int getEntrant(int playerKey) {
+    return this.match[playerKey];
+  }
+
+  /**
+   * Returns the tournament round of the current match.
+   * @return the round of the current match (starting at 1), or 0 if there is no tournament
+   */
+  public int getMatchRound() {
+    return this.tournament == null ? 0 : this.matchRound;
+  }
+
+  /**
+   * Moves onto the next match of the tournament, after the current match is over (in the FINAL state).
+   * @return true if the next match was loaded, false if there is no tournament or it is finished
+   */
+  public boolean nextMatch() {
+    if (this.tournament == null || this.model.getGameState() != GameState.FINAL || !this.tournament.hasNextMatch()) {
+      return false;
+    }
+    loadNextMatch();
+    return true;
+  }
+
+  /**
+   * Loads the next match of the tournament into the model, and moves onto the PLAYING_STALE state.
+   */
+  private void loadNextMatch() {
+    this.tournament.nextMatch(this.match);
+    this.matchRound = this.tournament.getRound();
+    this.model.loadMatch(this.tournament.getName(this.match[0]), this.tournament.getName(this.match[1]));
+    this.model.setGameState(GameState.PLAYING_STALE);
+  }
+
+  /**
+   * Sets the players' names to the given names, and moves onto the PLAYING_STALE state.
+   * @param names the names of the players, in order of their keys
+   * @return true if the names were set and the game moved onto the next state
+   */
+  public boolean confirmNames(String... names) {
+    if (this.model.getGameState() != GameState.INTRO || !hasPlayers() || names.length != getNumOfPlayers()) {
+      return false;
+    }
+    for (int i = 0; i < names.length; i++) {
+      this.model.getPlayer(i).setName(names[i]);
+    }
+    this.model.setGameState(GameState.PLAYING_STALE);
+    return true;
+  }
+
+  /**
+   * Starts the current player's round: the timer starts and the game enters the PLAYING_ACTIVE state.
+   * @return true if the round was started
+   */
+  public boolean start() {
+    if (this.model.getGameState() != GameState.PLAYING_STALE) {
+      return false;
+    }
+    CountdownTimer timer = getCurrentPlayer().timer;
+    timer.setDeadlineListener(this::roundEnded);
+    long now = this.clock.nanoTime(); //read once, so that a round reads the clock the same way with or without a scheduler
+    timer.start(now);
+    this.model.setGameState(GameState.PLAYING_ACTIVE);
+    if (this.scheduler != null) {
+      this.scheduler.schedule(() -> timer.poll(this.clock.nanoTime()), timer.getDeadline() - now, TimeUnit.NANOSECONDS);
+    }
+    return true;
+  }
+
+  /**
+   * Checks the current player's timer at the current time (notifying the round end listener 
+   * if the time is up and it hasn't been notified yet).
+   * @return true if the current player's time is up
+   */
+  public boolean update() {
+    if (this.model.getGameState() != GameState.PLAYING_ACTIVE) {
+      return false;
+    }
+    return getCurrentPlayer().timer.poll(this.clock.nanoTime());
+  }
+
+  /**
+   * Called (once per round) when the current player's time is up.
+   */
+  private void roundEnded() {
+    Runnable listener = this.roundEndListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Returns the time remaining in the given player's round, in milliseconds 
+   * (the full time limit if their round hasn't started yet).
+   * @param player the player to get the remaining time of
+   * @return the remaining time in milliseconds
+   */
+  public int getRemainingMillis(Player player) {
+    return player.timer.getRemainingMillis(this.clock.nanoTime());
+  }
+
+  /**
+   * Determines if the current player's round is over (i.e. the time's up message should be showing).
+   * @return true if the game is in the PLAYING_ACTIVE state and the current player's time is up
+   */
+  public boolean isTimeUp() {
+    return this.model.getGameState() == GameState.PLAYING_ACTIVE && getCurrentPlayer().timer.hasEnded(this.clock.nanoTime());
+  }
+
+  /**
+   * Scores a point for the current player, if their round is running and their time is not up.
+   * @return true if a point was scored
+   */
+  public boolean press() {
+    return press(this.clock.nanoTime());
+  }
+
+  /**
+   * Scores a point for the current player for a press that happened at the given time, 
+   * if that time is within the current player's round. The press is decided by when it happened, 
+   * so a press that is handled late (e.g. after a slow frame) still counts if it happened in time.
+   * @param nanos the time of the press, from this engine's time source (in nanoseconds)
+   * @return true if a point was scored
+   */
+  public boolean press(long nanos) {
+    if (this.model.getGameState() != GameState.PLAYING_ACTIVE 
+        || !getCurrentPlayer().timer.isRunningAt(nanos)) {
+      return false;
+    }
+    getCurrentPlayer().scoreUp();
+    return true;
+  }
+
+  /**
+   * Moves onto the next player after the current player's time is up.
+   * If all players have already played, the game moves onto the FINAL state.
+   * @return true if the game moved onto the next player or the final state
+   */
+  public boolean next() {
+    if (!isTimeUp()) {
+      return false;
+    }
+    recordResult(getCurrentPlayer());
+    if (this.model.getTurn() < getNumOfPlayers() - 1) { //there are still more players who need to play
+      this.model.nextTurn();
+      this.model.setGameState(GameState.PLAYING_STALE);
+    }
+    else { //last player's turn
+      if (this.tournament != null) { //the match is over
+        for (int i = 0; i < this.matchScores.length; i++) {
+          this.matchScores[i] = this.model.getPlayer(i).getScore();
+        }
+        this.tournament.reportMatch(this.match, this.matchScores);
+      }
+      this.model.setGameState(GameState.FINAL);
+    }
+    return true;
+  }
+
+  /**
+   * Appends the result of the given player's completed round to the results store (if there is one).
+   * Failing to write the result doesn't stop the game.
+   * @param player the player whose round is completed
+   */
+  private void recordResult(Player player) {
+    if (this.results == null) {
+      return;
+    }
+    try {
+      this.results.append(new RoundResult(player.getName(), player.getScore(), System.currentTimeMillis(),
+          (int) (player.timer.getDuration() / 1000000L), 
+          this.tournament != null ? GameMode.TOURNAMENT : GameMode.forPlayers(getNumOfPlayers())));
+    } catch (IOException e) {
+      System.err.println("Could not save the result of " + player.getName() + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Resets the game, by setting the game model back to the start in place (reusing its players and their timers),
+   * and leaving the tournament, if there is one.
+   */
+  public void reset() {
+    this.model.reset();
+    this.tournament = null;
+  }
+}
@@ -0,0 +1,160 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class runs the game logic of a GameEngine in ticks: each tick handles the key events that arrived since
+ * the last tick (from an input ring buffer, e.g. the presses that score points), checks the current player's timer,
+ * and publishes a GameSnapshot of the result for the view to draw.
+ *
+ * The ticks can run on a thread of their own at a fixed rate (start), so that the logic keeps its timing however
+ * long the frames take to draw, or be run by the caller (tick), e.g. at the start of each frame, so that a recorded
+ * session is replayed exactly. Anything else that changes the engine (e.g. a button being clicked) must be applied
+ * through apply, which runs it between two ticks.
+ *
+ * The snapshots are handed over without locks: there are three of them, the one being taken by the logic,
+ * the latest one published and the one being read by the view, and they are swapped through an AtomicReference,
+ * so the view always gets the newest complete snapshot without waiting for the logic (and the other way around).
+ * Only the thread that draws the frames may read the snapshots.
+ * @author stefanieim
+ */
+public class GameLoop {
+  public final static int DEFAULT_TICK_RATE = 240; //ticks per second (a few ticks per frame)
+
+  private final GameEngine engine;
+  private final InputRingBuffer inputs; //the key events, handled by the logic
+  private final InputRingBuffer.Handler handler; //handles each key event (e.g. scores a point for a press)
+  private final InputRingBuffer.Handler pressTracker = this::handleInput; //the handler, also noting the latest point
+  private final Object lock = new Object(); //held by a tick, or by a change of the engine from another thread
+
+  //taken by the logic (under the lock), the latest published, and read by the view
+  private GameSnapshot back;
+  private final AtomicReference<GameSnapshot> latest;
+  private GameSnapshot front;
+  private long sequence; //the number of the last snapshot taken
+  private long lastPressNanos; //the time at which the latest point was pressed
+
+  private ScheduledExecutorService thread; //runs the ticks at a fixed rate (null if the caller runs them)
+  private volatile long ticks; //number of ticks run so far
+
+  /**
+   * Creates a new game loop for the given engine, whose ticks handle the events of the given input buffer
+   * (the loop is the consumer of the input buffer). No ticks are run until start or tick is called.
+   * @param engine the engine to run the logic of
+   * @param inputs the buffer that the key events arrive in
+   * @param handler the handler of each key event (it is run with the engine being ticked)
+   */
+  public GameLoop(GameEngine engine, InputRingBuffer inputs, InputRingBuffer.Handler handler) {
+    this.engine = engine;
+    this.inputs = inputs;
+    this.handler = handler;
+    this.back = new GameSnapshot();
+    this.latest = new AtomicReference<GameSnapshot>(new GameSnapshot());
+    this.front = new GameSnapshot();
+  }
+
+  /**
+   * Starts running the ticks on a thread of their own, at the given rate.
+   * @param ticksPerSecond the number of ticks per second
+   */
+  public void start(int ticksPerSecond) {
+    if (this.thread != null) {
+      throw new IllegalStateException("the game loop is already running");
+    }
+    if (ticksPerSecond < 1) {
+      throw new IllegalArgumentException("the tick rate must be positive");
+    }
+    this.thread = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "game-logic");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = 1000000000L / ticksPerSecond;
+    this.thread.scheduleAtFixedRate(this::tick, 0, period, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Determines if the ticks run on a thread of their own (otherwise, the caller runs them with tick).
+   * @return true if the loop's thread is running
+   */
+  public boolean isRunning() {
+    return this.thread != null;
+  }
+
+  /**
+   * Runs one tick on the calling thread: the key events that arrived since the last tick are handled,
+   * the current player's timer is checked, and a new snapshot is published.
+   */
+  public void tick() {
+    synchronized (this.lock) {
+      step();
+    }
+  }
+
+  /**
+   * Runs the given change of the engine (e.g. a button's action) on the calling thread, between two ticks:
+   * the key events that arrived before it are handled first, and a new snapshot is published after it,
+   * so the next snapshot read already shows the change.
+   * @param change the change to apply
+   */
+  public void apply(Runnable change) {
+    synchronized (this.lock) {
+      this.inputs.drain(this.pressTracker);
+      change.run();
+      step();
+    }
+  }
+
+  /**
+   * Returns the newest snapshot published (only called by the thread that draws the frames).
+   * The snapshot stays the same until this method is called again.
+   * @return the newest snapshot
+   */
+  public GameSnapshot getSnapshot() {
+    if (this.latest.get().getSequence() > this.front.getSequence()) {
+      this.front = this.latest.getAndSet(this.front); //the older snapshot is reused by the logic
+    }
+    return this.front;
+  }
+
+  /**
+   * Returns the number of ticks run so far.
+   * @return the number of ticks
+   */
+  public long getTicks() {
+    return this.ticks;
+  }
+
+  /**
+   * Stops the loop's thread (if it is running). Ticks can still be run by the caller after that.
+   */
+  public void close() {
+    if (this.thread != null) {
+      this.thread.shutdownNow();
+    }
+  }
+
+  /**
+   * Handles the waiting key events, checks the timer and publishes a snapshot (with the lock held).
+   */
+  private void step() {
+    this.inputs.drain(this.pressTracker);
+    boolean timeUp = this.engine.update();
+    this.back.take(this.engine, ++this.sequence, timeUp, this.lastPressNanos);
+    this.back = this.latest.getAndSet(this.back); //publishes the snapshot
+    this.ticks++;
+  }
+
+  /**
+   * Passes one key event to the handler, and notes its time if it scored a point.
+   */
+  private void handleInput(int type, char key, int keyCode, long nanos) {
+    Player player = this.engine.hasPlayers() ? this.engine.getCurrentPlayer() : null;
+    int score = player == null ? 0 : player.getScore();
+    this.handler.onEvent(type, key, keyCode, nanos);
+    if (player != null && player.getScore() != score) {
+      this.lastPressNanos = nanos;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+/**
+ * Represents the different play modes of a game:
+ * - SINGLE: one player
+ * - DUAL: two players, the one with the highest score wins
+ * - TOURNAMENT: a series of two-player matches between many entrants
+ * 
+ * @author stefanieim
+ */
+public enum GameMode {
+  SINGLE,  //one player
+  DUAL,    //two players
+  TOURNAMENT; //two players per match, many entrants
+
+  /**
+   * Returns the play mode for the given number of players.
+   * @param numOfPlayers the number of players in the game
+   * @return the play mode for the given number of players
+   */
+  public static GameMode forPlayers(int numOfPlayers) {
+    return numOfPlayers == 1 ? SINGLE : DUAL;
+  }
+}
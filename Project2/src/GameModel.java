@@ -8,6 +8,7 @@ import java.util.List;
  */
 public class GameModel {
   private final List<Player> players;
+  private final List<Player> pool; //every player created by this model (by key), reused by later games
   private GameState state;
   private int turn; //index of the player with the current turn
   
@@ -20,18 +21,54 @@ public class GameModel {
    */
   public GameModel() {
     this.players = new ArrayList<Player>();
+    this.pool = new ArrayList<Player>();
     this.state = GameState.INTRO;
     this.turn = 0;
   }
   
   /**
    * Adds the given number of players to this model's list of players 
+   * (players of an earlier game are reused, and set back to a new player).
    * @param howMany the number of players to add
    */
   public void addPlayers(int howMany) {
     for (int i = 0; i < howMany; i++) {
-      this.players.add(new Player(i));
+      int key = this.players.size();
+      if (key == this.pool.size()) {
+        this.pool.add(new Player(key));
+      }
+      Player player = this.pool.get(key);
+      player.reset();
+      this.players.add(player);
+    }
+  }
+
+  /**
+   * Sets this model back to a new game in place: no players (the players are kept, to be reused), 
+   * the introduction state, and the first player's turn.
+   */
+  public void reset() {
+    this.players.clear();
+    this.state = GameState.INTRO;
+    this.turn = 0;
+  }
+
+  /**
+   * Loads a new match into this model by reusing its players (e.g. for the next match of a tournament):
+   * the players get the given names, their scores and timers are set back, and the turn goes back to the first player.
+   * @param names the names of the players of the match, in order of their keys
+   */
+  public void loadMatch(String... names) {
+    if (names.length != this.players.size()) {
+      throw new IllegalArgumentException("expected " + this.players.size() + " names, got " + names.length);
+    }
+    for (int i = 0; i < names.length; i++) {
+      Player player = this.players.get(i);
+      player.setName(names[i]);
+      player.setScore(0);
+      player.timer.reset();
     }
+    this.turn = 0;
   }
 
   /**
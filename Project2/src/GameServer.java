@@ -0,0 +1,276 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hosts many independent headless game sessions in one JVM (e.g. as the backend of several kiosks).
+ * Every connection to the server is one session, with its own GameEngine (and so its own GameModel, players and timers),
+ * and it is handled by its own thread: a virtual thread if the JVM supports them (Java 21+), or a platform thread otherwise.
+ * The server only listens on the loopback address.
+ * 
+ * The protocol is line based: the client sends one command per line, and the server answers each command with one line.
+ *   PLAYERS n          choose the number of players (1 or 2)
+ *   NAMES name...      confirm the players' names
+ *   START              start the current player's round
+ *   PRESS              score a point for the current player
+ *   NEXT               move onto the next player (once the current player's time is up)
+ *   RESET              start over with a new game
+ *   STATE              only report the state
+ *   QUIT               close the session
+ * The answer is "OK" if the command was applied, "NO" if it isn't allowed in the current state of the game,
+ * followed by the state, the current turn, the current player's score and their remaining time in milliseconds
+ * (e.g. "OK PLAYING_ACTIVE 0 12 2143"), or "ERR" followed by a message if the command is malformed.
+ * 
+ * To run the server (from the Project2 folder, after compiling into out):
+ *   java -cp out:core.jar GameServer [port]
+ * @author stefanieim
+ */
+public class GameServer implements Closeable {
+  public final static int DEFAULT_PORT = 7700;
+  public final static int BACKLOG = 4096; //number of connections that can wait to be accepted
+  public final static long PLATFORM_THREAD_STACK = 256 * 1024; //stack size of the session threads, without virtual threads
+
+  private final ServerSocket serverSocket;
+  private final ExecutorService sessions; //runs one task per session
+  private final Thread acceptor; //accepts new connections
+  private final Set<Socket> connections; //the connections of all active sessions
+  private final AtomicInteger activeSessions;
+  private final AtomicLong totalSessions;
+  private final AtomicLong commands;
+  private volatile boolean closed;
+
+  /**
+   * Creates a new server that listens on the given port of the loopback address, and starts accepting connections.
+   * @param port the port to listen on (0 for any free port)
+   * @throws IOException if the server socket couldn't be opened
+   */
+  public GameServer(int port) throws IOException {
+    this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+    this.sessions = newThreadPerTaskExecutor("session");
+    this.activeSessions = new AtomicInteger();
+    this.totalSessions = new AtomicLong();
+    this.commands = new AtomicLong();
+    this.connections = ConcurrentHashMap.newKeySet();
+    this.acceptor = new Thread(this::acceptConnections, "GameServer-acceptor");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+  }
+
+  /**
+   * Creates an executor that runs every task on its own new thread: a virtual thread if the JVM supports them,
+   * or a daemon platform thread with a small stack otherwise. Virtual threads are looked up by reflection,
+   * so this class still compiles and runs on older JVMs.
+   * @param name the prefix of the names of the platform threads
+   * @return the executor
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String name) {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(null, task, name + "-" + count.incrementAndGet(), PLATFORM_THREAD_STACK);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Determines if the threads of newThreadPerTaskExecutor are virtual threads.
+   * @return true if the JVM supports virtual threads
+   */
+  public static boolean hasVirtualThreads() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Accepts connections until the server is closed, and starts a session for each of them.
+   */
+  private void acceptConnections() {
+    while (!this.closed) {
+      try {
+        Socket socket = this.serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        this.sessions.execute(() -> runSession(socket));
+      } catch (IOException e) {
+        if (!this.closed) {
+          System.err.println("Could not accept a connection: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs one session: reads commands from the given connection and answers them, until the client quits or disconnects.
+   * @param socket the connection of the session
+   */
+  private void runSession(Socket socket) {
+    this.activeSessions.incrementAndGet();
+    this.totalSessions.incrementAndGet();
+    this.connections.add(socket);
+    GameEngine engine = new GameEngine();
+    try (Socket s = socket;
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.trim().equalsIgnoreCase("QUIT")) {
+          break;
+        }
+        out.write(execute(engine, line));
+        out.write('\n');
+        out.flush();
+        this.commands.incrementAndGet();
+      }
+    } catch (SocketException e) {
+      //the client disconnected
+    } catch (IOException e) {
+      System.err.println("Session error: " + e.getMessage());
+    } finally {
+      this.connections.remove(socket);
+      this.activeSessions.decrementAndGet();
+    }
+  }
+
+  /**
+   * Applies the given command line to the given session's engine, and returns the answer.
+   * @param engine the engine of the session
+   * @param line the command line
+   * @return the answer to the command (without the line break)
+   */
+  public static String execute(GameEngine engine, String line) {
+    String[] words = line.trim().split("\\s+");
+    boolean applied;
+    switch (words[0].toUpperCase()) {
+      case "PLAYERS":
+        if (words.length != 2) {
+          return "ERR usage: PLAYERS n";
+        }
+        try {
+          int howMany = Integer.parseInt(words[1]);
+          applied = howMany <= 2 && engine.choosePlayers(howMany);
+        } catch (NumberFormatException e) {
+          return "ERR not a number: " + words[1];
+        }
+        break;
+      case "NAMES":
+        String[] names = new String[words.length - 1];
+        System.arraycopy(words, 1, names, 0, names.length);
+        applied = engine.confirmNames(names);
+        break;
+      case "START":
+        applied = engine.start();
+        break;
+      case "PRESS":
+        applied = engine.press();
+        break;
+      case "NEXT":
+        applied = engine.next();
+        break;
+      case "RESET":
+        engine.reset();
+        applied = true;
+        break;
+      case "STATE":
+        applied = true;
+        break;
+      default:
+        return "ERR unknown command: " + words[0];
+    }
+    return (applied ? "OK " : "NO ") + status(engine);
+  }
+
+  /**
+   * Returns the status of the given session: its state, the current turn, 
+   * and the current player's score and remaining time in milliseconds.
+   * @param engine the engine of the session
+   * @return the status of the session
+   */
+  private static String status(GameEngine engine) {
+    GameModel model = engine.getModel();
+    if (!engine.hasPlayers()) {
+      return model.getGameState() + " 0 0 0";
+    }
+    Player player = engine.getCurrentPlayer();
+    return model.getGameState() + " " + model.getTurn() + " " + player.getScore() + " " + engine.getRemainingMillis(player);
+  }
+
+  /**
+   * Returns the port that this server listens on.
+   * @return the port of this server
+   */
+  public int getPort() {
+    return this.serverSocket.getLocalPort();
+  }
+
+  /**
+   * Returns the number of sessions that are currently connected.
+   * @return the number of active sessions
+   */
+  public int getActiveSessions() {
+    return this.activeSessions.get();
+  }
+
+  /**
+   * Returns the number of sessions since the server started.
+   * @return the total number of sessions
+   */
+  public long getTotalSessions() {
+    return this.totalSessions.get();
+  }
+
+  /**
+   * Returns the number of commands answered since the server started.
+   * @return the number of commands
+   */
+  public long getCommands() {
+    return this.commands.get();
+  }
+
+  /**
+   * Stops accepting connections and closes all sessions.
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.serverSocket.close();
+    for (Socket socket : this.connections) {
+      socket.close(); //unblocks the session's read
+    }
+    this.sessions.shutdownNow();
+  }
+
+  /**
+   * Starts a server on the given port (or the default port), until the JVM is stopped.
+   * @param args the port to listen on (optional)
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    GameServer server = new GameServer(port);
+    System.out.println("SpaceChallenge server on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() 
+        + (hasVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+    server.acceptor.join();
+  }
+}
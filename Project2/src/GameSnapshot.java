@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * A copy of the parts of a game that the game logic changes on its own (see GameLoop), taken at one tick,
+ * so that the view can draw them without reading the engine while the logic is changing it:
+ * each player's score and remaining time, and whether the current player's time is up.
+ *
+ * Every point adds one circle, so a player's score is also the number of circles they have made: the circles
+ * that are new since the view last looked are the ones between the number of circles it has and the score
+ * (the circles themselves are generated by the view, from the player's circle generator).
+ *
+ * A snapshot is only written by the GameLoop that owns it, before it is published, and is read-only after that.
+ * Its arrays are reused by the next ticks, so taking a snapshot doesn't create any objects.
+ * @author stefanieim
+ */
+public class GameSnapshot {
+  private long sequence; //the number of the tick that took this snapshot (later snapshots have larger numbers)
+  private long nanos; //the time of the engine's clock when this snapshot was taken
+  private GameState state;
+  private int turn; //index of the player with the current turn
+  private int players; //the number of players
+  private int[] scores; //the score of each player
+  private int[] remainingMillis; //the remaining time of each player's round
+  private boolean timeUp; //true if the current player's time is up
+  private long lastPressNanos; //the time at which the latest point was pressed (0 if none yet)
+
+  /**
+   * Creates a new empty snapshot (of a game without players, before the first tick).
+   */
+  public GameSnapshot() {
+    this.state = GameState.INTRO;
+    this.scores = new int[Processing.MAX_PLAYERS];
+    this.remainingMillis = new int[Processing.MAX_PLAYERS];
+  }
+
+  /**
+   * Copies the current state of the given engine into this snapshot (only called by the GameLoop, before publishing it).
+   * @param engine the engine to take the snapshot of
+   * @param sequence the number of the tick
+   * @param timeUp true if the current player's time is up (as found by the tick)
+   * @param lastPressNanos the time at which the latest point was pressed
+   */
+  void take(GameEngine engine, long sequence, boolean timeUp, long lastPressNanos) {
+    GameModel model = engine.getModel();
+    this.sequence = sequence;
+    this.nanos = engine.nanoTime();
+    this.state = model.getGameState();
+    this.turn = model.getTurn();
+    this.players = engine.getNumOfPlayers();
+    if (this.scores.length < this.players) {
+      this.scores = Arrays.copyOf(this.scores, this.players);
+      this.remainingMillis = Arrays.copyOf(this.remainingMillis, this.players);
+    }
+    for (int i = 0; i < this.players; i++) {
+      Player player = model.getPlayer(i);
+      this.scores[i] = player.getScore();
+      this.remainingMillis[i] = player.timer.getRemainingMillis(this.nanos);
+    }
+    this.timeUp = timeUp;
+    this.lastPressNanos = lastPressNanos;
+  }
+
+  /**
+   * Returns the number of the tick that took this snapshot (a snapshot with a larger number is newer).
+   * @return the sequence number of this snapshot
+   */
+  public long getSequence() {
+    return this.sequence;
+  }
+
+  /**
+   * Returns the time of the engine's clock when this snapshot was taken.
+   * @return the time of this snapshot, in nanoseconds
+   */
+  public long getNanos() {
+    return this.nanos;
+  }
+
+  /**
+   * Returns the state of the game.
+   * @return the game state
+   */
+  public GameState getGameState() {
+    return this.state;
+  }
+
+  /**
+   * Returns the index of the player whose turn it is.
+   * @return the current turn
+   */
+  public int getTurn() {
+    return this.turn;
+  }
+
+  /**
+   * Returns the number of players in the game.
+   * @return the number of players
+   */
+  public int getNumOfPlayers() {
+    return this.players;
+  }
+
+  /**
+   * Returns the score of the player with the given key (also the number of circles the player has made).
+   * @param playerKey the index of the player
+   * @return the player's score
+   */
+  public int getScore(int playerKey) {
+    checkPlayer(playerKey);
+    return this.scores[playerKey];
+  }
+
+  /**
+   * Returns the time remaining in the round of the player with the given key
+   * (the full time limit if their round hasn't started yet).
+   * @param playerKey the index of the player
+   * @return the player's remaining time in milliseconds
+   */
+  public int getRemainingMillis(int playerKey) {
+    checkPlayer(playerKey);
+    return this.remainingMillis[playerKey];
+  }
+
+  /**
+   * Determines if the current player's round is over (i.e. the time's up message should be showing).
+   * @return true if the game is in the PLAYING_ACTIVE state and the current player's time is up
+   */
+  public boolean isTimeUp() {
+    return this.timeUp;
+  }
+
+  /**
+   * Returns the time at which the latest point was pressed (e.g. to measure the time until it is drawn).
+   * @return the time of the latest press from the engine's clock, in nanoseconds (0 if no point was scored yet)
+   */
+  public long getLastPressNanos() {
+    return this.lastPressNanos;
+  }
+
+  /**
+   * Checks that the given key is the key of a player in this snapshot.
+   * @param playerKey the key to check
+   */
+  private void checkPlayer(int playerKey) {
+    if (playerKey < 0 || playerKey >= this.players) {
+      throw new IndexOutOfBoundsException("player: " + playerKey + ", players: " + this.players);
+    }
+  }
+}
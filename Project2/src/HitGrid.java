@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over an area, that finds the UI node at a point by only checking the few nodes 
+ * that overlap the point's cell (instead of every node). Each node is registered in every cell 
+ * that it overlaps, once, when it is added. Nodes added later are on top of nodes added earlier.
+ * @author stefanieim
+ */
+public class HitGrid {
+  public final static int CELL_SIZE = 48; //width and height of each cell
+
+  private final int columns;
+  private final int rows;
+  private final List<UiNode> nodes; //all nodes, in the order they were added
+  private final int[][] cells; //the indices of the nodes that overlap each cell, in the order they were added
+  private final int[] cellSize; //the number of nodes that overlap each cell
+
+  /**
+   * Creates a new empty grid over the given area.
+   * @param width the width of the area
+   * @param height the height of the area
+   */
+  public HitGrid(int width, int height) {
+    this.columns = (width + CELL_SIZE - 1) / CELL_SIZE;
+    this.rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+    this.nodes = new ArrayList<UiNode>();
+    this.cells = new int[this.columns * this.rows][2];
+    this.cellSize = new int[this.columns * this.rows];
+  }
+
+  /**
+   * Adds the given node on top of the nodes already in this grid (the part of the node outside of the area is ignored).
+   * @param node the node to add
+   */
+  public void add(UiNode node) {
+    int index = this.nodes.size();
+    this.nodes.add(node);
+    int firstColumn = clamp(node.getX() / CELL_SIZE, this.columns);
+    int lastColumn = clamp((node.getX() + node.getWidth()) / CELL_SIZE, this.columns);
+    int firstRow = clamp(node.getY() / CELL_SIZE, this.rows);
+    int lastRow = clamp((node.getY() + node.getHeight()) / CELL_SIZE, this.rows);
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        int cell = row * this.columns + column;
+        if (this.cellSize[cell] == this.cells[cell].length) {
+          this.cells[cell] = Arrays.copyOf(this.cells[cell], this.cellSize[cell] * 2);
+        }
+        this.cells[cell][this.cellSize[cell]++] = index;
+      }
+    }
+  }
+
+  /**
+   * Returns the topmost enabled node that contains the given point.
+   * @param px the x position of the point
+   * @param py the y position of the point
+   * @return the node at the point, or null if there is none
+   */
+  public UiNode nodeAt(int px, int py) {
+    if (px < 0 || py < 0 || px / CELL_SIZE >= this.columns || py / CELL_SIZE >= this.rows) {
+      return null;
+    }
+    int cell = (py / CELL_SIZE) * this.columns + (px / CELL_SIZE);
+    for (int k = this.cellSize[cell] - 1; k >= 0; k--) { //latest (topmost) first
+      UiNode node = this.nodes.get(this.cells[cell][k]);
+      if (node.contains(px, py) && node.isEnabled()) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of nodes in this grid.
+   * @return the number of nodes
+   */
+  public int size() {
+    return this.nodes.size();
+  }
+
+  /**
+   * Limits the given cell coordinate to the grid.
+   */
+  private static int clamp(int value, int count) {
+    return Math.max(0, Math.min(count - 1, value));
+  }
+}
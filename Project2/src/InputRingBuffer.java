@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free ring buffer of keyboard events, for one producer thread (the thread that receives
+ * the events from the window) and one consumer thread (the game logic).
+ * Each event is stamped with the time it arrived at, so that the game logic can decide what to do 
+ * with an event by when it happened, not by when it was handled. 
+ * The events are stored in preallocated arrays, so adding and draining events never allocates.
+ * @author stefanieim
+ */
+public class InputRingBuffer {
+  public final static int KEY_DOWN = 1;
+  public final static int KEY_UP = 2;
+
+  /**
+   * Receives the events drained from an input ring buffer.
+   */
+  public interface Handler {
+    /**
+     * Handles one event.
+     * @param type the type of the event (KEY_DOWN or KEY_UP)
+     * @param key the character of the key
+     * @param keyCode the code of the key (for keys without a character, e.g. arrow keys)
+     * @param nanos the time at which the event arrived, in nanoseconds
+     */
+    void onEvent(int type, char key, int keyCode, long nanos);
+  }
+
+  private final int mask; //capacity - 1 (the capacity is a power of two)
+  private final byte[] types;
+  private final char[] keys;
+  private final int[] keyCodes;
+  private final long[] times;
+
+  private final AtomicLong head; //index of the next event to read (only written by the consumer)
+  private final AtomicLong tail; //index of the next event to write (only written by the producer)
+  private final AtomicLong dropped; //number of events dropped because the buffer was full
+
+  /**
+   * Creates a new empty ring buffer that can hold at least the given number of events.
+   * @param capacity the minimum number of events the buffer can hold (rounded up to a power of two)
+   */
+  public InputRingBuffer(int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+    }
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    size = Math.max(size, 1);
+    this.mask = size - 1;
+    this.types = new byte[size];
+    this.keys = new char[size];
+    this.keyCodes = new int[size];
+    this.times = new long[size];
+    this.head = new AtomicLong();
+    this.tail = new AtomicLong();
+    this.dropped = new AtomicLong();
+  }
+
+  /**
+   * Adds an event to this buffer (only called by the producer thread).
+   * @param type the type of the event (KEY_DOWN or KEY_UP)
+   * @param key the character of the key
+   * @param keyCode the code of the key
+   * @param nanos the time at which the event arrived, in nanoseconds
+   * @return true if the event was added, false if it was dropped because the buffer is full
+   */
+  public boolean offer(int type, char key, int keyCode, long nanos) {
+    long t = this.tail.get();
+    if (t - this.head.get() > this.mask) { //full
+      this.dropped.incrementAndGet();
+      return false;
+    }
+    int i = (int) (t & this.mask);
+    this.types[i] = (byte) type;
+    this.keys[i] = key;
+    this.keyCodes[i] = keyCode;
+    this.times[i] = nanos;
+    this.tail.lazySet(t + 1); //publishes the event to the consumer
+    return true;
+  }
+
+  /**
+   * Passes all events that are in this buffer to the given handler, in the order they arrived,
+   * and removes them from this buffer (only called by the consumer thread).
+   * @param handler the handler of the events
+   * @return the number of events drained
+   */
+  public int drain(Handler handler) {
+    long h = this.head.get();
+    long t = this.tail.get();
+    for (long n = h; n < t; n++) {
+      int i = (int) (n & this.mask);
+      handler.onEvent(this.types[i], this.keys[i], this.keyCodes[i], this.times[i]);
+    }
+    this.head.lazySet(t); //frees the slots for the producer
+    return (int) (t - h);
+  }
+
+  /**
+   * Removes all events from this buffer without handling them (only called by the consumer thread).
+   */
+  public void clear() {
+    this.head.lazySet(this.tail.get());
+  }
+
+  /**
+   * Returns the number of events that are waiting in this buffer.
+   * @return the number of events in this buffer
+   */
+  public int size() {
+    return (int) (this.tail.get() - this.head.get());
+  }
+
+  /**
+   * Returns the number of events that this buffer can hold.
+   * @return the capacity of this buffer
+   */
+  public int capacity() {
+    return this.mask + 1;
+  }
+
+  /**
+   * Returns the number of events that were dropped because this buffer was full.
+   * @return the number of dropped events
+   */
+  public long getDropped() {
+    return this.dropped.get();
+  }
+}
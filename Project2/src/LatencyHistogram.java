@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies (in nanoseconds), with a fixed number of buckets, so that recording 
+ * a value is cheap and never allocates. Buckets are spaced logarithmically (16 buckets for every 
+ * power of two), so percentiles are accurate to about 6% from nanoseconds up to minutes.
+ * @author stefanieim
+ */
+public class LatencyHistogram {
+  private final static int SUB_BUCKET_BITS = 4;
+  private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //16 buckets per power of two
+  private final static int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final long[] counts;
+  private long totalCount;
+  private long sum;
+  private long min;
+  private long max;
+
+  /**
+   * Creates a new empty histogram.
+   */
+  public LatencyHistogram() {
+    this.counts = new long[BUCKETS];
+    reset();
+  }
+
+  /**
+   * Records the given value (negative values are recorded as 0).
+   * @param nanos the value to record, in nanoseconds
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    this.counts[bucketOf(value)]++;
+    this.totalCount++;
+    this.sum += value;
+    this.min = Math.min(this.min, value);
+    this.max = Math.max(this.max, value);
+  }
+
+  /**
+   * Adds all values recorded in the given histogram to this histogram (e.g. to combine the histograms of several threads).
+   * @param other the histogram to add
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts[i] += other.counts[i];
+    }
+    this.totalCount += other.totalCount;
+    this.sum += other.sum;
+    this.min = Math.min(this.min, other.min);
+    this.max = Math.max(this.max, other.max);
+  }
+
+  /**
+   * Removes all recorded values from this histogram.
+   */
+  public void reset() {
+    Arrays.fill(this.counts, 0);
+    this.totalCount = 0;
+    this.sum = 0;
+    this.min = Long.MAX_VALUE;
+    this.max = 0;
+  }
+
+  /**
+   * Returns the value at the given percentile (e.g. 50 for the median, 99 for p99).
+   * Returns 0 if nothing has been recorded yet.
+   * @param percentile the percentile, between 0 and 100
+   * @return the (approximate) value at the given percentile, in nanoseconds
+   */
+  public long getPercentile(double percentile) {
+    if (this.totalCount == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100.0 * this.totalCount);
+    rank = Math.max(1, Math.min(this.totalCount, rank));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts[i];
+      if (seen >= rank) {
+        //middle of the bucket, but never outside of the recorded range
+        long mid = lowerBound(i) + (lowerBound(i + 1) - lowerBound(i)) / 2;
+        return Math.max(this.min, Math.min(this.max, mid));
+      }
+    }
+    return this.max;
+  }
+
+  /**
+   * Returns the number of recorded values.
+   * @return the number of recorded values
+   */
+  public long getCount() {
+    return this.totalCount;
+  }
+
+  /**
+   * Returns the smallest recorded value (0 if nothing has been recorded yet).
+   * @return the smallest recorded value, in nanoseconds
+   */
+  public long getMin() {
+    return this.totalCount == 0 ? 0 : this.min;
+  }
+
+  /**
+   * Returns the largest recorded value (0 if nothing has been recorded yet).
+   * @return the largest recorded value, in nanoseconds
+   */
+  public long getMax() {
+    return this.max;
+  }
+
+  /**
+   * Returns the mean of the recorded values (0 if nothing has been recorded yet).
+   * @return the mean of the recorded values, in nanoseconds
+   */
+  public double getMean() {
+    return this.totalCount == 0 ? 0 : (double) this.sum / this.totalCount;
+  }
+
+  /**
+   * Returns the index of the bucket that the given (non-negative) value belongs to.
+   */
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the smallest value that belongs to the bucket with the given index.
+   */
+  private static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = bucket % SUB_BUCKETS;
+    if (exponent >= 63) {
+      return Long.MAX_VALUE;
+    }
+    return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+}
@@ -0,0 +1,123 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import processing.awt.PGraphicsJava2D;
+
+/**
+ * This class runs a sketch without a window: every frame goes through the sketch's whole draw()
+ * (the same pipeline as in the window), but onto an offscreen Java2D graphics, so the frames can be drawn,
+ * timed and saved on a machine without a display (run the JVM with -Djava.awt.headless=true).
+ *
+ * The sketch's inputs (mouse position, clicks and keys) are set by the caller between the frames,
+ * e.g. by SessionReplayer (from a recording) or by a test script.
+ * @author stefanieim
+ */
+public class OffscreenRenderer {
+  private final Processing sketch;
+  private final PGraphicsJava2D graphics; //the offscreen graphics the sketch draws onto
+  private long lastFrameNanos; //the time taken by the last draw()
+  private int frames; //number of frames drawn so far
+
+  /**
+   * Creates a renderer that draws the given sketch onto a new offscreen graphics of the size of the canvas.
+   * The sketch must be new (its setup is called by the setup method of this renderer).
+   * @param sketch the sketch to draw
+   */
+  public OffscreenRenderer(Processing sketch) {
+    this.sketch = sketch;
+    this.graphics = new PGraphicsJava2D();
+    this.graphics.setParent(sketch);
+    this.graphics.setPrimary(false);
+    this.graphics.setSize(Processing.CANVAS_X, Processing.CANVAS_Y);
+    sketch.g = this.graphics;
+    sketch.width = sketch.pixelWidth = Processing.CANVAS_X;
+    sketch.height = sketch.pixelHeight = Processing.CANVAS_Y;
+  }
+
+  /**
+   * Runs the sketch's setup (on the calling thread, which then is the sketch's drawing thread).
+   */
+  public void setup() {
+    this.graphics.beginDraw();
+    this.sketch.setup();
+    this.graphics.endDraw();
+  }
+
+  /**
+   * Draws one frame of the sketch (handling the inputs that arrived since the last frame).
+   * @return the time taken by the sketch's draw(), in nanoseconds
+   */
+  public long renderFrame() {
+    this.graphics.beginDraw();
+    long start = System.nanoTime();
+    this.sketch.draw();
+    this.lastFrameNanos = System.nanoTime() - start;
+    this.graphics.endDraw();
+    this.frames++;
+    return this.lastFrameNanos;
+  }
+
+  /**
+   * Returns the sketch drawn by this renderer.
+   * @return the sketch
+   */
+  public Processing getSketch() {
+    return this.sketch;
+  }
+
+  /**
+   * Returns the offscreen graphics that the frames are drawn onto.
+   * @return the offscreen graphics
+   */
+  public PGraphicsJava2D getGraphics() {
+    return this.graphics;
+  }
+
+  /**
+   * Returns the last frame drawn (the offscreen graphics' image, which is drawn over by the next frame).
+   * @return the image of the last frame
+   */
+  public BufferedImage getImage() {
+    return (BufferedImage) this.graphics.image;
+  }
+
+  /**
+   * Returns the pixels of the last frame (as ARGB colors, row by row).
+   * @return the pixels of the last frame
+   */
+  public int[] getPixels() {
+    this.graphics.loadPixels();
+    return this.graphics.pixels;
+  }
+
+  /**
+   * Saves the last frame as an image file (the format is given by the file's extension, e.g. png).
+   * @param file the file to save the frame into
+   */
+  public void save(File file) {
+    this.graphics.save(file.getPath());
+  }
+
+  /**
+   * Returns the time taken by the sketch's draw() in the last frame.
+   * @return the time of the last frame, in nanoseconds
+   */
+  public long getLastFrameNanos() {
+    return this.lastFrameNanos;
+  }
+
+  /**
+   * Returns the number of frames drawn so far.
+   * @return the number of frames
+   */
+  public int getFrames() {
+    return this.frames;
+  }
+
+  /**
+   * Stops the sketch's background threads (e.g. its redraw timer), once no more frames are drawn.
+   */
+  public void close() {
+    this.sketch.dispose();
+  }
+}
@@ -26,6 +26,16 @@ public class Player {
     this.timer = new CountdownTimer(TIMELIMIT);
   }
   
+  /**
+   * Sets this player back to a new player (a null name, a score of 0 and a timer that hasn't started),
+   * so that it can be reused by another game.
+   */
+  public void reset() {
+    this.name = null;
+    this.score = 0;
+    this.timer.reset();
+  }
+
   /**
    * Return this player's name
    * @return the String value of the player's name
@@ -1,15 +1,20 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 import processing.core.PApplet;
-import processing.core.PShape;
+import processing.core.PFont;
+import processing.event.Event;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
 
 /**
  * This class acts as the View and Controller for the SpaceChallenge game.
  * It draws the canvas at every frame, as well as update variables and game states by listening to mouse clicks and keyboard inputs.
- * It contains a model of the game, and it refers to this in order to set and get data about the game.
+ * It contains an engine that applies the rules of the game, and refers to the engine's model in order to get data about the game.
  * 
  * @author stefanieim
  *
@@ -22,26 +27,91 @@ public class Processing extends PApplet {
   public final static int BTN_HEIGHT = CANVAS_VERTICAL_INC;
   public final static int NAMEBOX_WIDTH = BTN_WIDTH;
   public final static int NAMEBOX_HEIGHT = BTN_HEIGHT - (CANVAS_Y/27);
+  public final static int MAX_PLAYERS = 2; //number of players in the largest play mode (DUAL), i.e. number of name boxes
+  public final static int NAME_MAX_LENGTH = 10; //number of characters that can be typed into a name box
   public final static int TEXTSIZE_BTN = 24;
   public final static int TEXTSIZE_TITLE = 36;
   public final static int TEXTSIZE_SUBTITLE = 16;
   public final static int TEXTSIZE_CAPTION = 12;
+  public final static int TEXTSIZE_SCORE = 52; //the winner's score on the final screen
+  public final static int HUD_TOGGLE_KEY = java.awt.event.KeyEvent.VK_F1; //key that shows/hides the timing overlay
+  public final static int INPUT_BUFFER_CAPACITY = 4096; //number of key events that can wait to be handled
+  public final static long AUTO_REPEAT_GAP_NANOS = 2000000L; //a key released and pressed again faster than this is an auto-repeat
+  public final static String RESULTS_DIR_PROPERTY = "spacechallenge.resultsDir"; //system property with the directory of the results store
+  public final static String PROFILE_CSV_PROPERTY = "spacechallenge.profileCsv"; //system property with the path of the timings csv file
+  public final static String SEED_PROPERTY = "spacechallenge.seed"; //system property with the seed of the circles' random numbers
+  public final static int PRECOMPUTED_CIRCLES = CircleGenerator.DEFAULT_CAPACITY; //circles generated for a player before their round starts
+  public final static String RECORD_PROPERTY = "spacechallenge.record"; //system property with the path of the file to record the session into
+  public final static String ENTRANTS_PROPERTY = "spacechallenge.entrants"; //system property with the path of the tournament entrants file
+  public final static String FORMAT_PROPERTY = "spacechallenge.format"; //system property with the tournament format (elimination or round_robin)
+  public final static String INSTRUCTIONS = "Press the SPACE bar as many times\n" + "as possible within " 
+      + Player.TIMELIMIT + " seconds!";
+  public final static int STANDINGS_SHOWN = 5; //number of top entrants shown after each tournament match
+  public final static String FULL_REDRAW_PROPERTY = "spacechallenge.fullRedraw"; //system property that turns off dirty-rectangle repainting
+  public final static String MAX_CIRCLES_PROPERTY = "spacechallenge.maxCircles"; //system property with the number of circles kept per player
+  public final static String EVICTION_PROPERTY = "spacechallenge.eviction"; //system property with the eviction of old circles (oldest_first or fade_and_drop)
+  public final static String LOGIC_RATE_PROPERTY = "spacechallenge.logicRate"; //system property with the game logic's ticks per second (0 to tick at each frame)
+  public final static int DEFAULT_MAX_CIRCLES = 512; //circles kept per player (the score keeps counting past it)
+  public final static int EVICTION_BATCH = 4; //a full circle buffer evicts 1/EVICTION_BATCH of its circles at once
+  //regions of the canvas that report their dirty rectangle with a key (see DamageTracker)
+  private final static int REGION_SCREEN = 0, REGION_POPUP = 1, REGION_HUD = 2, REGION_BOARD = 3; //REGION_BOARD + player index
+  private final static int POPUP_X = CANVAS_X/2 - CANVAS_X/6, POPUP_Y = CANVAS_Y/2 - CANVAS_Y/4; //top left corner of the pop-ups
+  private final static int HUD_HEIGHT = 80;
+  private final static char[] CARET = {'|'}; //the caret of the name box being typed into
+
+  private GameEngine engine; //the engine that applies the game rules to the model
+  private ResultsStore results; //the results of all rounds ever played (null if it couldn't be opened)
+  public GameModel model; //the game model (stores game data), owned by the engine
 
-  public GameModel model; //the game model (stores game data)
+  //variables containing data for players, as an ordered list or map.
+  private List<TextField> nameBoxes; //a name box for each player (kept across games, so there may be more than players)
+  private int emptyNameBoxes; //the number of the players' name boxes that are still empty
+  private List<CircleBuffer> listOfPlayersCircles; //a list of the circle buffers (positions, diameters and colors of the latest circles) of all players
+  private List<CircleLayer> circleLayers; //an offscreen layer for each player, that all of the player's circles are drawn onto once
+  private List<CircleIndex> circleIndexes; //a quadtree over each player's circles, that knows which circles are hidden
+  private List<CircleGenerator> circleGenerators; //a generator of random circles for each player
+  private int maxCircles; //the number of circles kept for each player (the oldest are evicted)
+  private CircleBuffer.Eviction circleEviction; //how the oldest circles are evicted
+  private CircleGenerator circleRandom; //the generator that the players' generators are split from (kept across resets)
+
+  //indicator for the reset pop-up message.
+  public boolean resetMsgShowing;
 
-  private Integer numOfPlayers; //the number of players in this game
+  //all buttons, and the cache of their rendered images
+  private Button btnSingle, btnDual, btnTournament, btnConfirmName, btnConfirmNameDisabled, btnStart, btnNext, btnNextMatch, 
+      btnReset, btnResetConfirm, btnResetCancel;
+  private Button btnNameBox, btnNameBoxEmpty; //the background of a name box, moved onto the box being drawn
+  private WidgetCache widgetCache;
+  private TextCache textCache; //the fonts of all text sizes, the rendered fixed strings and the digit atlases
+  private SceneGraph scene; //the clickable areas (buttons and name boxes) of every state, and of the reset pop-up
 
-  //variables containing data for players, as an ordered list or map.
-  private Map<Integer, String> nameBoxes; 
-  private List<List<PShape>> listOfPlayersCircles; //a list of the lists of all players' circles
-  private List<List<Integer[]>> listOfColors;  //a list of the lists of colors(rgb array of integers) for the circles for each player.
+  //timing instrumentation of the game loop, and its on-screen overlay
+  private FrameProfiler profiler;
+  private boolean hudShowing;
 
-  //indicators for pop-up messages.
-  public boolean timesUpMsgShowing;
-  public boolean resetMsgShowing;
+  //key events, timestamped when they arrive and handled by the game logic at its next tick
+  private final InputRingBuffer inputBuffer = new InputRingBuffer(INPUT_BUFFER_CAPACITY);
+  private final InputRingBuffer.Handler inputHandler = this::handleInput;
+  private GameLoop loop; //runs the game logic in ticks (on a thread of its own in the window, or at the start of each frame)
+  private GameSnapshot snapshot; //the scores and times of the game logic's latest tick, read at the start of each frame
+  private boolean spaceDown; //true if the space bar is held down (so further presses are auto-repeats)
+  private long spaceReleasedAt; //the time at which the space bar was last released
+
+  //recording of all inputs of the session, and whether the inputs come from a recording instead
+  private SessionRecorder recorder; //null if the session isn't being recorded
+  private boolean replaying;
 
-  //all buttons
-  private PShape btnSingle, btnDual, btnConfirmName, btnStart, btnNext, btnReset, btnResetConfirm, btnResetCancel;
+  //the regions of the canvas that changed since the last frame, and the region being repainted
+  private DamageTracker damage;
+  private boolean fullRedraw; //true to repaint the whole canvas at every frame
+  private boolean timesUpShowing; //true if the time's up message is showing (checked once per frame)
+  private volatile UiNode hoveredNode, hoveredOverlayNode; //the button or name box (and reset pop-up button) that the mouse was over in the last frame
+  private int paintLeft, paintTop, paintRight, paintBottom; //the region being repainted (right and bottom exclusive)
+
+  //frames are only drawn when something changes on the canvas, and all input events are handled on the drawing thread
+  //(except for the key presses in the input buffer, which are handled by the game logic)
+  private RedrawScheduler redrawScheduler;
+  private Thread animationThread; //the thread that draws the frames (null before setup)
 
 
 
@@ -59,25 +129,211 @@ public class Processing extends PApplet {
    * This function will set up all variables by running once when the program starts.
    */
   public void setup() {
-    this.model = new GameModel();
-    this.numOfPlayers = null;
+    this.animationThread = Thread.currentThread();
+    if (this.redrawScheduler == null) {
+      this.redrawScheduler = new RedrawScheduler(this);
+    }
+    if (this.recorder == null && !this.replaying && System.getProperty(RECORD_PROPERTY) != null) {
+      this.recorder = openRecorder();
+    }
+    if (this.circleRandom == null) {
+      this.circleRandom = new CircleGenerator(Long.getLong(SEED_PROPERTY, System.nanoTime()), CANVAS_X, CANVAS_Y);
+    }
+    if (this.engine == null) {
+      this.engine = new GameEngine(this.recorder != null ? this.recorder.record(TimeSource.SYSTEM) : TimeSource.SYSTEM, 
+          this.redrawScheduler.getTimer());
+    }
+    this.engine.setRoundEndListener(this.redrawScheduler::requestRedraw); //the time's up message is drawn at the deadline
+    this.model = this.engine.getModel();
+    if (this.loop == null) {
+      this.loop = new GameLoop(this.engine, this.inputBuffer, this.inputHandler);
+    }
+    if (this.results == null && !this.replaying) { //results are kept across resets (and a replay doesn't add any)
+      this.results = openResultsStore();
+      this.engine.setResultsStore(this.results);
+    }
 
-    this.nameBoxes = new HashMap<>();
+    if (this.nameBoxes == null) { //the players' variables are kept across resets, and reused by the next game
+      this.nameBoxes = new ArrayList<TextField>();
+      this.listOfPlayersCircles = new ArrayList<CircleBuffer>();
+      this.circleLayers = new ArrayList<CircleLayer>();
+      this.circleGenerators = new ArrayList<CircleGenerator>();
+      this.circleIndexes = new ArrayList<CircleIndex>();
+    }
 
-    this.listOfColors = new ArrayList<List<Integer[]>>();
-    this.listOfPlayersCircles = new ArrayList<List<PShape>>();
+    if (this.widgetCache == null) {
+      this.widgetCache = new WidgetCache();
+    }
+    if (this.textCache == null) { //the fonts are created once, at startup
+      this.textCache = new TextCache(this, TEXTSIZE_CAPTION, TEXTSIZE_SUBTITLE, TEXTSIZE_BTN, TEXTSIZE_TITLE, TEXTSIZE_SCORE);
+    }
+    if (this.profiler == null) { //timings are kept across resets
+      this.profiler = new FrameProfiler();
+    }
+    if (this.damage == null) {
+      this.damage = new DamageTracker(CANVAS_X, CANVAS_Y, REGION_BOARD + MAX_PLAYERS);
+      this.fullRedraw = Boolean.getBoolean(FULL_REDRAW_PROPERTY);
+      this.maxCircles = Math.max(EVICTION_BATCH, Integer.getInteger(MAX_CIRCLES_PROPERTY, DEFAULT_MAX_CIRCLES));
+      this.circleEviction = CircleBuffer.Eviction.valueOf(
+          System.getProperty(EVICTION_PROPERTY, CircleBuffer.Eviction.OLDEST_FIRST.name()).toUpperCase());
+    }
+    if (this.scene == null) {
+      createButtons();
+      createScene();
+    }
+    resetGame();
+    //in the window, the game logic runs on its own thread, unless the session is recorded (so it can be replayed exactly)
+    if (!this.loop.isRunning() && this.surface != null && this.recorder == null && !this.replaying) {
+      int ticksPerSecond = Integer.getInteger(LOGIC_RATE_PROPERTY, GameLoop.DEFAULT_TICK_RATE);
+      if (ticksPerSecond > 0) {
+        this.loop.start(ticksPerSecond);
+      }
+    }
+  }
 
-    this.timesUpMsgShowing = false;
+  /**
+   * Resets the game in place (e.g. when the reset is confirmed), back to the very first screen: 
+   * the engine's model, players and timers, the name boxes, and the players' circle buffers and layers 
+   * are all set back and reused by the next game, instead of being created again.
+   */
+  private void resetGame() {
+    this.engine.reset();
     this.resetMsgShowing = false;
+    this.damage.invalidate();
+    this.paintLeft = 0; //outside of draw (e.g. in the benchmarks), helpers draw onto the whole canvas
+    this.paintTop = 0;
+    this.paintRight = CANVAS_X;
+    this.paintBottom = CANVAS_Y;
+    this.hoveredNode = null;
+    this.hoveredOverlayNode = null;
+  }
 
-    this.btnSingle = createShape();
-    this.btnDual = createShape();
-    this.btnConfirmName = createShape();
-    this.btnStart = createShape();
-    this.btnNext = createShape();
-    this.btnReset = createShape();
-    this.btnResetConfirm = createShape();
-    this.btnResetCancel = createShape();
+  /**
+   * Opens the results store in the directory given by the RESULTS_DIR_PROPERTY system property
+   * (or the "results" directory). The game can still be played if the store can't be opened.
+   * @return the results store, or null if it couldn't be opened
+   */
+  private ResultsStore openResultsStore() {
+    String dir = System.getProperty(RESULTS_DIR_PROPERTY, "results");
+    try {
+      return new ResultsStore(Paths.get(dir));
+    } catch (IOException e) {
+      System.err.println("Could not open the results in " + dir + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Opens the recorder for the file given by the RECORD_PROPERTY system property, with the seed given by the 
+   * SEED_PROPERTY system property or a new random seed (that the circles are generated from). 
+   * The game can still be played if the file can't be created.
+   * @return the recorder, or null if the file couldn't be created
+   */
+  private SessionRecorder openRecorder() {
+    String path = System.getProperty(RECORD_PROPERTY);
+    long seed = Long.getLong(SEED_PROPERTY, System.nanoTime());
+    try {
+      SessionRecorder recorder = new SessionRecorder(path, seed, TimeSource.SYSTEM.nanoTime());
+      this.circleRandom = new CircleGenerator(seed, CANVAS_X, CANVAS_Y);
+      return recorder;
+    } catch (IOException e) {
+      System.err.println("Could not record the session into " + path + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Prepares this sketch to replay a recorded session (see SessionReplayer), before setup is called:
+   * the game is played with the given engine (whose clock returns the recorded times), the circles 
+   * are generated from the recorded seed, and nothing is recorded or added to the results store.
+   * @param engine the engine to play with
+   * @param seed the seed of the recorded circles
+   */
+  void replay(GameEngine engine, long seed) {
+    this.engine = engine;
+    this.replaying = true;
+    this.circleRandom = new CircleGenerator(seed, CANVAS_X, CANVAS_Y);
+  }
+
+  /**
+   * Adds a recorded key event to the input buffer, as if it had just arrived (used by SessionReplayer).
+   * @param type the type of the event (InputRingBuffer.KEY_DOWN or KEY_UP)
+   * @param key the character of the key
+   * @param keyCode the code of the key
+   * @param nanos the time at which the event arrived
+   */
+  void replayInput(int type, char key, int keyCode, long nanos) {
+    this.inputBuffer.offer(type, key, keyCode, nanos);
+  }
+
+  /**
+   * Creates all buttons of the game, with their positions, labels and colors.
+   * The buttons are only rendered once (into the widget cache), the first time they are drawn.
+   */
+  private void createButtons() {
+    int white = color(255);
+    this.btnSingle = new Button(CANVAS_X/5, CANVAS_VERTICAL_INC*3, BTN_WIDTH, BTN_HEIGHT, 
+        "SINGLE PLAYER", color(250, 0, 255), color(253, 135, 255), white);
+    this.btnDual = new Button((CANVAS_X - CANVAS_X/5 - BTN_WIDTH), (CANVAS_VERTICAL_INC*3), BTN_WIDTH, BTN_HEIGHT, 
+        "DUAL PLAYER", color(0, 224, 255), color(157, 243, 255), color(38, 0, 75));
+    this.btnTournament = new Button((CANVAS_X/2 - BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*4.6), BTN_WIDTH, BTN_HEIGHT, 
+        "TOURNAMENT", color(255, 153, 0), color(255, 207, 135), white);
+    this.btnConfirmName = new Button((CANVAS_X/2 - BTN_WIDTH/2), (CANVAS_VERTICAL_INC*5), BTN_WIDTH, BTN_HEIGHT, 
+        "CONFIRM", color(255, 153, 0), color(255, 207, 135), white);
+    this.btnConfirmNameDisabled = new Button((CANVAS_X/2 - BTN_WIDTH/2), (CANVAS_VERTICAL_INC*5), BTN_WIDTH, BTN_HEIGHT, 
+        "CONFIRM (disabled)", color(153, 153, 153), color(153, 153, 153), color(116, 116, 116));
+    this.btnStart = new Button((CANVAS_X/2) - (BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*3.8), BTN_WIDTH, BTN_HEIGHT, 
+        "START", color(80, 2, 106), color(133, 40, 165), white);
+    this.btnNext = new Button((CANVAS_X/2) - (BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*3.8), BTN_WIDTH, BTN_HEIGHT, 
+        "NEXT", color(80, 2, 106), color(133, 40, 165), white);
+    this.btnNextMatch = new Button((CANVAS_X/2) - (BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*5.3), BTN_WIDTH, BTN_HEIGHT, 
+        "NEXT MATCH", color(80, 2, 106), color(133, 40, 165), white);
+    //the reset button is partly outside of the canvas, so its label is moved towards the visible part
+    this.btnReset = new Button(CANVAS_X - BTN_WIDTH/2 - CANVAS_X/32, CANVAS_Y - BTN_HEIGHT/2 - CANVAS_X/32, BTN_WIDTH, BTN_HEIGHT, 
+        "RESET", color(255, 59, 59), color(255, 115, 115), white, (BTN_WIDTH/3), (int)(BTN_HEIGHT/2.5));
+    this.btnResetConfirm = new Button((CANVAS_X/2 - BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*2.7), BTN_WIDTH, BTN_HEIGHT, 
+        "Yes, reset", color(0, 0, 0), color(50, 50, 50), white);
+    this.btnResetCancel = new Button((CANVAS_X/2 - BTN_WIDTH/2), (CANVAS_VERTICAL_INC*4), BTN_WIDTH, BTN_HEIGHT, 
+        "No, go back", color(0, 0, 0), color(50, 50, 50), white);
+    //the name boxes (their text is drawn over the white box), which look the same whether they are hovered or not
+    this.btnNameBox = new Button((CANVAS_X/2 - NAMEBOX_WIDTH/2), 0, NAMEBOX_WIDTH, NAMEBOX_HEIGHT, 
+        "", white, white, color(0));
+    this.btnNameBoxEmpty = new Button((CANVAS_X/2 - NAMEBOX_WIDTH/2), 0, NAMEBOX_WIDTH, NAMEBOX_HEIGHT, 
+        "hover to type", color(147, 99, 194), color(147, 99, 194), color(0));
+  }
+
+
+
+  /**
+   * Registers the clickable areas of every game state (and of the reset pop-up) in the scene graph, once,
+   * with what happens when they are clicked. Areas that only appear sometimes (e.g. the NEXT button once 
+   * the time is up) are only enabled while they are showing.
+   */
+  private void createScene() {
+    this.scene = new SceneGraph(CANVAS_X, CANVAS_Y);
+    BooleanSupplier choosingMode = () -> !this.engine.hasPlayers();
+    BooleanSupplier enteringNames = () -> this.engine.hasPlayers();
+    //INTRO: play mode buttons, then name boxes and the CONFIRM button
+    this.scene.add(GameState.INTRO, UiNode.of(this.btnSingle, choosingMode, () -> setPlayerVariables(1)));
+    this.scene.add(GameState.INTRO, UiNode.of(this.btnDual, choosingMode, () -> setPlayerVariables(2)));
+    this.scene.add(GameState.INTRO, UiNode.of(this.btnTournament, 
+        () -> choosingMode.getAsBoolean() && isTournamentAvailable(), this::tournamentButtonListener));
+    for (int i = 0; i < MAX_PLAYERS; i++) { //the name boxes (each box's tag is its player's index)
+      int playerKey = i;
+      this.scene.add(GameState.INTRO, new UiNode(CANVAS_X/2 - NAMEBOX_WIDTH/2, 
+          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*i) - NAMEBOX_HEIGHT/2, NAMEBOX_WIDTH, (NAMEBOX_HEIGHT/2)*2, 
+          () -> playerKey < this.engine.getNumOfPlayers(), null, playerKey));
+    }
+    this.scene.add(GameState.INTRO, UiNode.of(this.btnConfirmName, enteringNames, this::confirmButtonListener));
+    //game play
+    this.scene.add(GameState.PLAYING_STALE, UiNode.of(this.btnStart, null, this::startButtonListener));
+    this.scene.add(GameState.PLAYING_ACTIVE, UiNode.of(this.btnNext, () -> this.engine.isTimeUp(), this::nextButtonListener));
+    this.scene.add(GameState.FINAL, UiNode.of(this.btnNextMatch, 
+        () -> this.engine.getTournament() != null && this.engine.getTournament().hasNextMatch(), this::nextMatchButtonListener));
+    //reset button in all game states (except for the very first screen), and its pop-up
+    this.scene.addToAllStates(UiNode.of(this.btnReset, enteringNames, () -> this.resetMsgShowing = true));
+    this.scene.addToOverlay(UiNode.of(this.btnResetConfirm, null, this::resetGame)); //confirm reset
+    this.scene.addToOverlay(UiNode.of(this.btnResetCancel, null, () -> this.resetMsgShowing = false)); //cancel reset
   }
 
 
@@ -88,75 +344,135 @@ public class Processing extends PApplet {
 
   /**
    * This method is executed repeatedly to draw onto the canvas at every frame.
+   * The canvas keeps what was painted in the previous frames, so only the regions that changed since the last frame
+   * are repainted (see trackDamage): the scene is drawn once for each dirty rectangle, clipped to that rectangle, 
+   * and nothing is drawn at all if nothing changed.
+   * Frames are only drawn at the frame rate while a round is running; otherwise a frame is only drawn when 
+   * something asks for it (see RedrawScheduler and postEvent).
+   * The scores and times are drawn from the game logic's latest snapshot (see GameLoop), read once at the start of the frame.
    */
   public void draw() {
+    this.redrawScheduler.beginFrame();
+    dequeueEvents(); //events that arrived while the sketch wasn't looping are handled here, on the drawing thread
+    if (this.recorder != null) {
+      this.recorder.frame(mouseX, mouseY);
+    }
+    long frameStart = this.profiler.beginFrame(model.getGameState());
+    updateFromLogic(); //the scores and times of the game logic's latest tick, and the circles made since the last frame
+    GameState state = model.getGameState();
+    //the timer is checked by the game logic (which reports if the current player's time is up)
+    this.timesUpShowing = state == GameState.PLAYING_ACTIVE && this.snapshot.isTimeUp();
+
+    trackDamage(state);
+    if (this.damage.isFull()) {
+      drawScene(state, 0, 0, CANVAS_X, CANVAS_Y);
+    }
+    else {
+      for (int i = 0; i < this.damage.size(); i++) {
+        int x = this.damage.getX(i), y = this.damage.getY(i), w = this.damage.getWidth(i), h = this.damage.getHeight(i);
+        clip(x, y, w, h);
+        drawScene(state, x, y, w, h);
+        noClip();
+      }
+    }
+    this.damage.endFrame();
+    //keep drawing at every frame while the countdown is running
+    this.redrawScheduler.frameRendered(state == GameState.PLAYING_ACTIVE && !this.timesUpShowing);
+    this.profiler.endFrame(frameStart);
+  }
+
+  /**
+   * Reads the newest snapshot of the game logic (running a tick first, if the logic doesn't run on its own thread),
+   * and adds the circles that the players made since the last snapshot read: a player's score is the number of circles
+   * they have made, so the circles from the number in their circle buffer up to their score are new.
+   */
+  private void updateFromLogic() {
+    if (!this.loop.isRunning()) {
+      this.loop.tick(); //apply all key presses that arrived since the last frame
+    }
+    this.snapshot = this.loop.getSnapshot();
+    boolean added = false;
+    for (int i = 0; i < this.snapshot.getNumOfPlayers() && i < this.listOfPlayersCircles.size(); i++) {
+      while (this.listOfPlayersCircles.get(i).size() < this.snapshot.getScore(i)) {
+        addNextCircle(i);
+        added = true;
+      }
+    }
+    if (added) {
+      this.profiler.markInput(this.snapshot.getLastPressNanos());
+    }
+  }
+
+  /**
+   * Draws the whole scene of the given state, in the given region of the canvas (parts of the scene that are 
+   * outside of the region are skipped, and the canvas must already be clipped to the region).
+   * @param state the state of the game to draw
+   * @param x the x position of the top left corner of the region
+   * @param y the y position of the top left corner of the region
+   * @param w the width of the region
+   * @param h the height of the region
+   */
+  private void drawScene(GameState state, int x, int y, int w, int h) {
+    this.paintLeft = x;
+    this.paintTop = y;
+    this.paintRight = x + w;
+    this.paintBottom = y + h;
     background(38, 0, 75);
 
-    switch (model.getGameState()) {
+    switch (state) {
       case INTRO:
         //player mode not chosen yet
-        if (numOfPlayers == null) { 
-          drawButton(this.btnSingle, CANVAS_X/5, CANVAS_VERTICAL_INC*3, 250, 0, 255, 253, 135, 255, "SINGLE PLAYER", 255, 255, 255);
-          drawButton(this.btnDual, (CANVAS_X - CANVAS_X/5 - BTN_WIDTH), (CANVAS_VERTICAL_INC*3), 0, 224, 255, 157, 243, 255, "DUAL PLAYER", 38, 0, 75);
-          fill(255);
-          stroke(255);
-          textAlign(CENTER, TOP);
-          textSize(TEXTSIZE_SUBTITLE);
-          text("Choose Game-play Mode", CANVAS_X/2, CANVAS_VERTICAL_INC*2);
+        if (!this.engine.hasPlayers()) { 
+          drawButton(this.btnSingle);
+          drawButton(this.btnDual);
+          if (isTournamentAvailable()) {
+            drawButton(this.btnTournament);
+          }
+          drawLabel("Choose Game-play Mode", TEXTSIZE_SUBTITLE, color(255), CENTER, TOP, CANVAS_X/2, CANVAS_VERTICAL_INC*2);
         }
         //player mode is chosen (so now the user needs to type the names of players);
         else { 
-          background(38, 0, 75);
-          fill(255);
-          stroke(255);
-          textAlign(CENTER, TOP);
-          textSize(TEXTSIZE_SUBTITLE);
-          text("Enter player name (max 10 characters)", CANVAS_X/2, CANVAS_VERTICAL_INC*2);
-
-          for (int i = 0; i < numOfPlayers; i++) {
+          drawLabel("Enter player name (max " + NAME_MAX_LENGTH + " characters)", TEXTSIZE_SUBTITLE, color(255), CENTER, TOP, 
+              CANVAS_X/2, CANVAS_VERTICAL_INC*2);
+
+          for (int i = 0; i < this.engine.getNumOfPlayers(); i++) {
             drawNameBox(i); //draw name boxes for number of players
           }
 
           //if all name boxes have a string value in it, enable the CONFIRM button
           if (checkAllNameBoxesFilled()) {
-            drawButton(this.btnConfirmName, (CANVAS_X/2 - BTN_WIDTH/2), (CANVAS_VERTICAL_INC*5), 255, 153, 0, 255, 207, 135, "CONFIRM", 255, 255, 255);
+            drawButton(this.btnConfirmName);
           }
           //if an empty name box remains, disable the CONFIRM button
           else {
-            drawButton(this.btnConfirmName, (CANVAS_X/2 - BTN_WIDTH/2), (CANVAS_VERTICAL_INC*5), 153, 153, 153, 153, 153, 153, "CONFIRM (disabled)", 116, 116, 116);
+            drawButton(this.btnConfirmNameDisabled);
           }
         }
         break;
 
       case PLAYING_STALE:
-        background(38, 0, 75);
         drawStartPopUp(); //draw the pop up message that contains whose turn it is and the instructions.
-        drawButton(this.btnStart, (CANVAS_X/2) - (BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*3.8), 80, 2, 106, 133, 40, 165, "START", 255, 255, 255);
+        drawButton(this.btnStart);
         break;
 
       case PLAYING_ACTIVE:
-        background(38, 0, 75);
-        Player currentPlayer = this.model.getPlayer(model.getTurn());
-        //timer
-        if (currentPlayer.timer.currentCountdownTime > 0) {  
-          currentPlayer.timer.setCurrentTime(millis());
-        }
-        //when timer has ended
-        if (currentPlayer.timer.hasEnded()){ //time has ended
-          timesUpMsgShowing = true; //show time's up message pop up
-        }
         //draw all the circles created with user's spacebar keyboard input
         drawListOfCircles(); 
         //draw time's up message and the NEXT button
-        if (timesUpMsgShowing) {
+        if (this.timesUpShowing) {
           drawTimesUpMsg();
-          drawButton(this.btnNext, (CANVAS_X/2) - (BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*3.8), 80, 2, 106, 133, 40, 165, "NEXT", 255, 255, 255);
+          drawButton(this.btnNext);
         }
         break;
 
       case FINAL:
-        background(38, 0, 75);
         drawFinalMessage();
+        if (this.engine.getTournament() != null) {
+          drawStandings();
+          if (this.engine.getTournament().hasNextMatch()) {
+            drawButton(this.btnNextMatch);
+          }
+        }
         break;
 
       default:
@@ -164,87 +480,127 @@ public class Processing extends PApplet {
     }
 
     //header always drawn at the end so that nothing covers it
-    drawHeader(model.getGameState()); 
+    drawHeader(state); 
 
     //reset button for all states (except for very first screen)
-    drawButton(this.btnReset, CANVAS_X - BTN_WIDTH/2 - CANVAS_X/32, CANVAS_Y - BTN_HEIGHT/2 - CANVAS_X/32, 255, 59, 59, 255, 115, 115, "RESET", 255, 255, 255);
+    if (this.engine.hasPlayers()) {
+      drawButton(this.btnReset);
+    }
 
     if (resetMsgShowing) {
       drawResetMessagePopUp(); //draw reset message (i.e. "are you sure?" message) pop-up
     }
+
+    if (hudShowing) {
+      drawProfilerHud(); //timing overlay (not included in the frame's own timing)
+    }
+  }
+
+  /**
+   * Reports the regions of the canvas that changed since the last frame to the damage tracker:
+   * - the whole canvas when the screen changed (game state, chosen play mode, turn or reset pop-up),
+   * - the button or name box that the mouse moved onto or away from,
+   * - a scoreboard when its remaining time, score or turn changed,
+   * - the time's up message when it appears, and the timing overlay at every frame while it shows.
+   * New circles report their own rectangle when they are drawn onto their layer (see addCircleToLayer).
+   * @param state the current state of the game
+   */
+  private void trackDamage(GameState state) {
+    if (this.fullRedraw) {
+      this.damage.invalidate();
+    }
+    long screenKey = state.ordinal() | (this.resetMsgShowing ? 1L << 8 : 0) | (this.engine.hasPlayers() ? 1L << 9 : 0)
+        | ((long) this.model.getTurn() << 16);
+    this.damage.report(REGION_SCREEN, screenKey, 0, 0, CANVAS_X, CANVAS_Y);
+
+    //buttons under the reset pop-up still show their hover state
+    this.hoveredNode = trackHover(this.hoveredNode, this.scene.nodeAt(state, false, mouseX, mouseY));
+    this.hoveredOverlayNode = trackHover(this.hoveredOverlayNode, 
+        this.resetMsgShowing ? this.scene.nodeAt(state, true, mouseX, mouseY) : null);
+
+    if (state == GameState.PLAYING_STALE || state == GameState.PLAYING_ACTIVE || state == GameState.FINAL) {
+      for (int i = 0; i < this.snapshot.getNumOfPlayers(); i++) {
+        long boardKey = ((long) this.snapshot.getRemainingMillis(i) << 32) | ((long) this.snapshot.getScore(i) << 1)
+            | (i == this.model.getTurn() ? 1 : 0);
+        this.damage.report(REGION_BOARD + i, boardKey, getScoreBoardX(i), 0, CANVAS_X/6, CANVAS_VERTICAL_INC);
+      }
+    }
+    this.damage.report(REGION_POPUP, this.timesUpShowing ? 1 : 0, POPUP_X, POPUP_Y, CANVAS_X/3, CANVAS_Y/2);
+    this.damage.report(REGION_HUD, this.hudShowing ? frameCount : -1, 0, CANVAS_Y - HUD_HEIGHT, CANVAS_X/3, HUD_HEIGHT);
+  }
+
+  /**
+   * Reports the buttons or name boxes that the mouse moved away from and onto (if the hovered node changed).
+   * @param previous the node that the mouse was over in the last frame, or null
+   * @param hovered the node that the mouse is over now, or null
+   * @return the node that the mouse is over now
+   */
+  private UiNode trackHover(UiNode previous, UiNode hovered) {
+    if (hovered != previous) {
+      if (previous != null) {
+        this.damage.add(previous.getX(), previous.getY(), previous.getWidth(), previous.getHeight());
+      }
+      if (hovered != null) {
+        this.damage.add(hovered.getX(), hovered.getY(), hovered.getWidth(), hovered.getHeight());
+      }
+    }
+    return hovered;
+  }
+
+  /**
+   * Determines if the given rectangle overlaps the region of the canvas that is being repainted.
+   * @param x the x position of the top left corner of the rectangle
+   * @param y the y position of the top left corner of the rectangle
+   * @param w the width of the rectangle
+   * @param h the height of the rectangle
+   * @return true if (a part of) the rectangle has to be drawn
+   */
+  private boolean inPaintArea(int x, int y, int w, int h) {
+    return x < this.paintRight && this.paintLeft <= x + w && y < this.paintBottom && this.paintTop <= y + h;
   }
 
   //DRAW helpers------------------------------------  
 
   /**
-   * Draws a button onto the canvas.
-   * @param s the PShape object of this button
-   * @param topLeftX the x position of the top left corner that this button will be drawn on.
-   * @param topLeftY the y position of the top left corner that this button will be drawn on.
-   * @param r the r value for this button's color (rgb)
-   * @param g the g value for this button's color (rgb)
-   * @param b the b value for this button's color (rgb)
-   * @param hoverR the r value for this button's hover state color (rgb)
-   * @param hoverG the g value for this button's hover state color (rgb)
-   * @param hoverB the b value for this button's hover state color (rgb)
-   * @param text the text to be displayed for this button
-   * @param textR the r value for this button's text color (rgb)
-   * @param textG the g value for this button's text color (rgb)
-   * @param textB the b value for this button's text color (rgb)
-   */
-  private void drawButton(PShape s, int topLeftX, int topLeftY, 
-      int r, int g, int b, int hoverR, int hoverG, int hoverB, 
-      String text, int textR, int textG, int textB) {
-
-    //hover
-    if ((topLeftX <= mouseX && mouseX <= topLeftX + BTN_WIDTH)
-        && (topLeftY <= mouseY && mouseY <= topLeftY + BTN_HEIGHT)) {
-      s.beginShape();
-      s.fill(color(hoverR,hoverG,hoverB));
-      s.stroke(color(hoverR,hoverG,hoverB));
-      s.vertex(topLeftX, topLeftY);
-      s.vertex(topLeftX+BTN_WIDTH, topLeftY);
-      s.vertex(topLeftX+BTN_WIDTH, topLeftY+BTN_HEIGHT);
-      s.vertex(topLeftX, topLeftY+BTN_HEIGHT);
-      s.vertex(topLeftX, topLeftY);
-      s.endShape();
-    }
-    //normal
-    else {
-      s.beginShape();
-      s.fill(color(r,g,b));
-      s.stroke(color(r,g,b));
-      s.vertex(topLeftX, topLeftY);
-      s.vertex(topLeftX+BTN_WIDTH, topLeftY);
-      s.vertex(topLeftX+BTN_WIDTH, topLeftY+BTN_HEIGHT);
-      s.vertex(topLeftX, topLeftY+BTN_HEIGHT);
-      s.vertex(topLeftX, topLeftY);
-      s.endShape();
-    }
-    shape(s);
-
-    //text
-    fill(color(textR, textG, textB));
-    textAlign(CENTER, CENTER);
-    textSize(TEXTSIZE_BTN);
-    if (s.equals(this.btnReset)) {
-      text(text, topLeftX + (BTN_WIDTH/3), topLeftY + (int)(BTN_HEIGHT/2.5));
+   * Draws a button onto the canvas, in its hover state if the mouse is over it.
+   * The button's images are taken from the widget cache, so this is a single image draw per frame.
+   * @param btn the button to draw
+   */
+  private void drawButton(Button btn) {
+    if (!inPaintArea(btn.getX(), btn.getY(), btn.getWidth(), btn.getHeight())) {
+      return;
     }
-    else {
-      text(text, topLeftX + (BTN_WIDTH/2), topLeftY + (BTN_HEIGHT/2));
+    long start = this.profiler.start();
+    btn.draw(this, this.widgetCache);
+    this.profiler.stop(FrameProfiler.Section.BUTTON, start);
+  }
+
+  /**
+   * Draws a string that doesn't change at every frame, from the label cache (see TextCache).
+   * @param text the string to draw
+   * @param size the text size
+   * @param color the color of the text
+   * @param alignX the horizontal alignment (LEFT, CENTER or RIGHT)
+   * @param alignY the vertical alignment (TOP, CENTER, BOTTOM or BASELINE)
+   * @param x the x position of the text
+   * @param y the y position of the text
+   */
+  private void drawLabel(String text, float size, int color, int alignX, int alignY, float x, float y) {
+    this.textCache.drawLabel(this, text, size, color, alignX, alignY, x, y);
+  }
+
+  /**
+   * Sets the size of the text drawn with text(), by switching to the font of that size (created once by the 
+   * text cache) instead of resizing the current font, which Processing does at every call.
+   * @param size the text size
+   */
+  public void textSize(float size) {
+    PFont font = this.textCache == null ? null : this.textCache.getFont(size);
+    if (font != null) {
+      textFont(font);
     }
-    //hide reset button for first screen
-    if (s.equals(this.btnReset) && numOfPlayers == null) {
-      s.beginShape();
-      s.fill(color(38, 0, 75));
-      s.stroke(color(38, 0, 75));
-      s.vertex(topLeftX, topLeftY);
-      s.vertex(topLeftX+BTN_WIDTH, topLeftY);
-      s.vertex(topLeftX+BTN_WIDTH, topLeftY+BTN_HEIGHT);
-      s.vertex(topLeftX, topLeftY+BTN_HEIGHT);
-      s.vertex(topLeftX, topLeftY);
-      s.endShape();
-      shape(s);
+    else {
+      super.textSize(size);
     }
   }
 
@@ -253,118 +609,139 @@ public class Processing extends PApplet {
    * When the name box has not yet been typed into, or if the user is not hovering over it,
    * it is purple with the message "hover to type".
    * If the user is hovering over the name box, or the name box contains a non-empty string,
-   * it is white, with the contained string displayed inside the box.
+   * it is white, with the contained string displayed inside the box (and the caret, while hovering over it).
+   * The boxes are drawn from the widget cache, and the typed string straight from the name box's buffer,
+   * so drawing a name box doesn't create any objects.
    * @param playerKey the integer index of the player to draw the name box for
    */
   private void drawNameBox(int playerKey) {
-    if (this.nameBoxes.get(playerKey) != "") { //when something has been typed
-      fill(255);
-      stroke(255);
-      rectMode(CENTER);
-      rect(CANVAS_X/2, //x
-          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey), //y
-          NAMEBOX_WIDTH, NAMEBOX_HEIGHT); //w & h
-      fill(0);
-      textAlign(CENTER, CENTER);
-      textSize(TEXTSIZE_BTN);
-      text(this.nameBoxes.get(playerKey), 
-          CANVAS_X/2, //x
-          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey));//y
-    }
-    else if (hoverOverNameBox() == playerKey) { //when hovering over box
-      fill(255);
-      stroke(255);
-      rectMode(CENTER);
-      rect(CANVAS_X/2, //x
-          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey), //y
-          NAMEBOX_WIDTH, NAMEBOX_HEIGHT); //w & h
-      fill(0);
-      textAlign(CENTER, CENTER);
-      textSize(TEXTSIZE_BTN);
-      text(this.nameBoxes.get(playerKey), 
-          CANVAS_X/2, //x
-          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey));//y
+    TextField nameBox = this.nameBoxes.get(playerKey);
+    boolean typing = hoverOverNameBox() == playerKey; //the box that is typed into is the one being hovered over
+    int y = CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey); //the center of the box
+    if (!nameBox.isEmpty() || typing) { //when something has been typed, or when hovering over box
+      this.btnNameBox.setPosition(this.btnNameBox.getX(), y - NAMEBOX_HEIGHT/2);
+      drawButton(this.btnNameBox);
+      float left = this.textCache.drawChars(this, nameBox.getChars(), nameBox.length(), TEXTSIZE_BTN, color(0), CENTER, CENTER, 
+          CANVAS_X/2, y);
+      if (typing) { //the caret, between the characters before and after it
+        float caretX = left + this.textCache.charsWidth(this, nameBox.getChars(), nameBox.getCaret(), TEXTSIZE_BTN, color(0));
+        this.textCache.drawChars(this, CARET, CARET.length, TEXTSIZE_BTN, color(0), CENTER, CENTER, caretX, y);
+      }
     }
     else {//nothing has been typed yet
-      fill(color(147, 99, 194));
-      stroke(color(147, 99, 194));
-      rectMode(CENTER);
-      rect(CANVAS_X/2, //x
-          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey), //y
-          NAMEBOX_WIDTH, NAMEBOX_HEIGHT); //w & h
-      fill(0);
-      textAlign(CENTER, CENTER);
-      textSize(TEXTSIZE_BTN);
-      text("hover to type", 
-          CANVAS_X/2, //x
-          CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*playerKey));//y
+      this.btnNameBoxEmpty.setPosition(this.btnNameBoxEmpty.getX(), y - NAMEBOX_HEIGHT/2);
+      drawButton(this.btnNameBoxEmpty);
     }
   }
 
   /** 
    * Draws the pop up message that is displayed right before the player enters the actual game play state.
    * This message contains the name of the player whose turn it is, the instructions for the game.
+   * It only changes with the screen, so it is only repainted when the whole canvas is.
    */
   private void drawStartPopUp() {
+    if (!inPaintArea(POPUP_X, POPUP_Y, CANVAS_X/3, CANVAS_Y/2)) {
+      return;
+    }
+    long start = this.profiler.start();
     Player currentPlayer = this.model.getPlayer(this.model.getTurn());
     fill(color(159, 59, 193));
     stroke(color(159, 59, 193));
     rectMode(CENTER);
     rect(CANVAS_X/2, CANVAS_Y/2, CANVAS_X/3, CANVAS_Y/2);
-    fill(255);
-    textAlign(CENTER, CENTER);
-    textSize(TEXTSIZE_BTN);
-    text(currentPlayer.getName() + "'s turn", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.3));
-    fill(color(239,190,255));
-    textSize(TEXTSIZE_SUBTITLE);
-    text("Press the SPACE bar as many times\n" +"as possible within " 
-        + Player.TIMELIMIT + " seconds!", CANVAS_X/2, CANVAS_VERTICAL_INC*3);
+    drawLabel(currentPlayer.getName() + "'s turn", TEXTSIZE_BTN, color(255), CENTER, CENTER, 
+        CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.3));
+    drawLabel(INSTRUCTIONS, TEXTSIZE_SUBTITLE, color(239,190,255), CENTER, CENTER, CANVAS_X/2, CANVAS_VERTICAL_INC*3);
+    this.profiler.stop(FrameProfiler.Section.POPUP, start);
   }
 
   /**
    * Draws the list of circles that is being created with each key press on the player's spacebar.
-   * Takes the circle from the listOfPlayersCircles and the colors from the list of colors.
+   * The circles have already been drawn onto the player's offscreen circle layer when they were created,
+   * so this only draws that one layer onto the canvas (in a single call), no matter how many circles there are.
    */
   private void drawListOfCircles() {
-    List<PShape> circles = this.listOfPlayersCircles.get(model.getTurn());
-    List<Integer[]> colors = this.listOfColors.get(model.getTurn());
+    long start = this.profiler.start();
+    this.circleLayers.get(model.getTurn()).draw(this.g);
+    this.profiler.stop(FrameProfiler.Section.CIRCLES, start);
+  }
+
+  /**
+   * Draws the circle with the given index in the player's circle buffer onto the player's offscreen circle layer.
+   * This happens once per circle (when it is created), instead of at every frame, and only the circle's 
+   * rectangle of the canvas is repainted.
+   * @param playerKey the index of the player whose layer the circle is drawn onto
+   * @param circleIndex the index of the circle in the player's circle buffer
+   */
+  private void addCircleToLayer(int playerKey, int circleIndex) {
+    CircleBuffer circles = this.listOfPlayersCircles.get(playerKey);
+    this.circleLayers.get(playerKey).add(circles, circleIndex);
+    int radius = ceil(circles.getDiameter(circleIndex) / 2);
+    this.damage.add(floor(circles.getX(circleIndex)) - radius, floor(circles.getY(circleIndex)) - radius, radius*2 + 1, radius*2 + 1);
+  }
 
-    for (int i = 0; i < circles.size(); i++) {
-      PShape circle = circles.get(i);
-      Integer r = colors.get(i)[0];
-      Integer g = colors.get(i)[1];
-      Integer b = colors.get(i)[2];
-      circle.setFill(color(r,g,b));
-      circle.setStroke(false);
-      shape(circle);
+  /**
+   * Adds the player's next circle (random diameter, rgb color and position on the canvas, generated ahead of time)
+   * for a point they scored, evicting their oldest circles first if their circle buffer is full.
+   * @param playerKey the index of the player who scored the point
+   */
+  private void addNextCircle(int playerKey) {
+    if (this.listOfPlayersCircles.get(playerKey).isFull()) { //only the latest circles are kept (the score keeps counting)
+      evictCircles(playerKey);
     }
+    int circleIndex = this.circleGenerators.get(playerKey).addNextTo(this.listOfPlayersCircles.get(playerKey));
+    this.circleIndexes.get(playerKey).addNext(); //hides the earlier circles that the new circle covers
+    //draw the new circle onto the player's circle layer once, so it doesn't need to be redrawn at every frame
+    addCircleToLayer(playerKey, circleIndex);
+  }
+
+  /**
+   * Evicts the oldest circles of the player's full circle buffer (1/EVICTION_BATCH of them, so the layer is only 
+   * redrawn once for that many new circles), and redraws the player's layer without them. The player's score isn't changed.
+   * @param playerKey the index of the player whose circles are evicted
+   */
+  private void evictCircles(int playerKey) {
+    CircleBuffer circles = this.listOfPlayersCircles.get(playerKey);
+    circles.evict(circles.getMaxSize() / EVICTION_BATCH);
+    this.circleIndexes.get(playerKey).evictTo(circles.getFirst());
+    redrawCircleLayer(playerKey);
+  }
+
+  /**
+   * Redraws the player's whole offscreen circle layer from their circle buffer (e.g. if the layer has been lost or changed).
+   * Circles that are completely hidden under a later circle are skipped. Once circles have been evicted, the next
+   * circles to be evicted are drawn fading out if the eviction is FADE_AND_DROP.
+   * @param playerKey the index of the player whose layer is redrawn
+   */
+  private void redrawCircleLayer(int playerKey) {
+    CircleBuffer circles = this.listOfPlayersCircles.get(playerKey);
+    boolean fading = this.circleEviction == CircleBuffer.Eviction.FADE_AND_DROP && circles.getFirst() > 0;
+    this.circleLayers.get(playerKey).redraw(circles, this.circleIndexes.get(playerKey), 
+        fading ? circles.getMaxSize() / EVICTION_BATCH : 0);
+    this.damage.invalidate();
   }
 
   /**
    * Draws the Time's up pop up screen, which is displayed when the time limit for the current
    * player's round has been reached. This message displays the name of the player whose time is up.
+   * Its region is dirty when it appears (see trackDamage).
    */
   private void drawTimesUpMsg() {
+    if (!inPaintArea(POPUP_X, POPUP_Y, CANVAS_X/3, CANVAS_Y/2)) {
+      return;
+    }
+    long start = this.profiler.start();
     Player currentPlayer = this.model.getPlayer(this.model.getTurn());
     fill(color(159, 59, 193));
     stroke(color(159, 59, 193));
     rectMode(CENTER);
     rect(CANVAS_X/2, CANVAS_Y/2, CANVAS_X/3, CANVAS_Y/2);
-    fill(255);
-    textAlign(CENTER, CENTER);
-    textSize(TEXTSIZE_SUBTITLE);
-    text(currentPlayer.getName(), CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.3));
-    fill(color(239,190,255));
-    textSize(TEXTSIZE_BTN);
-    text("Time's Up!", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.7));
-    textAlign(CENTER, CENTER);
-    fill(255);
-    textSize(TEXTSIZE_TITLE);
-    text(Integer.toString(currentPlayer.getScore()), CANVAS_X/2-CANVAS_X/48, (int)(CANVAS_VERTICAL_INC*3.25));
-    textAlign(CENTER, CENTER);
-    fill(color(239,190,255));
-    textSize(TEXTSIZE_SUBTITLE);
-    text("points", CANVAS_X/2+CANVAS_X/32, (int)(CANVAS_VERTICAL_INC*3.3));
+    drawLabel(currentPlayer.getName(), TEXTSIZE_SUBTITLE, color(255), CENTER, CENTER, CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.3));
+    drawLabel("Time's Up!", TEXTSIZE_BTN, color(239,190,255), CENTER, CENTER, CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.7));
+    this.textCache.drawNumber(this, this.snapshot.getScore(this.model.getTurn()), 0, TEXTSIZE_TITLE, color(255), CENTER, CENTER, 
+        CANVAS_X/2-CANVAS_X/48, (int)(CANVAS_VERTICAL_INC*3.25));
+    drawLabel("points", TEXTSIZE_SUBTITLE, color(239,190,255), CENTER, CENTER, CANVAS_X/2+CANVAS_X/32, (int)(CANVAS_VERTICAL_INC*3.3));
+    this.profiler.stop(FrameProfiler.Section.POPUP, start);
   }
 
   /**
@@ -374,37 +751,65 @@ public class Processing extends PApplet {
    * winner message or a draw message
    */
   private void drawFinalMessage() {
+    long start = this.profiler.start();
     fill(0);
     stroke(0);
     rectMode(CENTER);
     rect(CANVAS_X/2, CANVAS_Y/2, CANVAS_X/2, CANVAS_Y/2);
 
-    fill(255);
-    stroke(255);
     textAlign(CENTER, CENTER);
-    textSize(TEXTSIZE_BTN);
     
     Player winner = model.determineWinner(); 
 
-    if (numOfPlayers == 1) { //single player (doesn't need winner/loser)
-      text(winner.getName() + "'s Final Score is", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.5));
+    Tournament tournament = this.engine.getTournament();
+    if (tournament != null && tournament.getChampion() >= 0) { //last match of a tournament
+      fill(color(255, 153, 0));
+      textSize(TEXTSIZE_SUBTITLE);
+      text(tournament.getName(tournament.getChampion()) + " is the tournament champion!", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.05));
+    }
+
+    if (this.engine.getNumOfPlayers() == 1) { //single player (doesn't need winner/loser)
+      drawLabel(winner.getName() + "'s Final Score is", TEXTSIZE_BTN, color(255), CENTER, CENTER, CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.5));
     } 
     else {
       if (winner.getName().equals("none")) { //draw
-        text("It's a draw!", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.5));
+        drawLabel("It's a draw!", TEXTSIZE_BTN, color(255), CENTER, CENTER, CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.5));
       }
       else {
-        text(winner.getName() + " WINS with", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.5));
+        drawLabel(winner.getName() + " WINS with", TEXTSIZE_BTN, color(255), CENTER, CENTER, CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*2.5));
       }
     }
-    fill(color(250, 0, 255));
-    stroke(color(250, 0, 255));
-    textSize(52);
-    text(winner.getScore(), CANVAS_X/2, CANVAS_Y/2);
-    fill(color(110,0,149));
-    stroke(color(110,0,149));
-    textSize(TEXTSIZE_BTN);
-    text("points", CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*4.2));
+    this.textCache.drawNumber(this, winner.getScore(), 0, TEXTSIZE_SCORE, color(250, 0, 255), CENTER, CENTER, CANVAS_X/2, CANVAS_Y/2);
+    drawLabel("points", TEXTSIZE_BTN, color(110,0,149), CENTER, CENTER, CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*4.2));
+    //historical rank of the score among all rounds ever played
+    int rank = this.engine.getHistoricalRank(winner.getScore());
+    if (rank > 0) {
+      fill(color(210,79,255));
+      textSize(TEXTSIZE_SUBTITLE);
+      text("all-time rank #" + rank + " of " + this.engine.getHistoricalCount(), CANVAS_X/2, (int)(CANVAS_VERTICAL_INC*4.7));
+    }
+    this.profiler.stop(FrameProfiler.Section.POPUP, start);
+  }
+
+  /**
+   * Draws the current standings of the tournament next to the final message of a match:
+   * the top entrants with their points and total score.
+   */
+  private void drawStandings() {
+    long start = this.profiler.start();
+    Tournament tournament = this.engine.getTournament();
+    int[] top = tournament.getStandings(STANDINGS_SHOWN);
+    fill(color(239,190,255));
+    textAlign(LEFT, TOP);
+    drawLabel("Standings", TEXTSIZE_SUBTITLE, color(239,190,255), LEFT, TOP, 20, (int)(CANVAS_VERTICAL_INC*1.8));
+    textSize(TEXTSIZE_CAPTION);
+    for (int i = 0; i < top.length; i++) {
+      text((i + 1) + ". " + tournament.getName(top[i]) + "  " + tournament.getPoints(top[i]) + " pts (" 
+          + tournament.getTotalScore(top[i]) + ")", 20, (int)(CANVAS_VERTICAL_INC*2.2) + i * 20);
+    }
+    text(tournament.getMatchesPlayed() + " matches, " + tournament.getEntrantCount() + " entrants", 
+        20, (int)(CANVAS_VERTICAL_INC*2.2) + top.length * 20 + 10);
+    this.profiler.stop(FrameProfiler.Section.POPUP, start);
   }
 
   /**
@@ -412,42 +817,44 @@ public class Processing extends PApplet {
    * Initially, the header only has the game title, but after the player chooses the game-play mode (single vs. dual), 
    * this information is added next to the title. When the player enters the PLAYING_STALE state (the pop-up message 
    * with the START button that starts the countdown and actual game play), the player's scoreboard is added to the 
-   * header as well.
+   * header as well. The header is repainted with the whole canvas, and a scoreboard is also repainted on its own 
+   * whenever its remaining time or score changes (see trackDamage).
    * @param state the state of the game to draw the header for.
    */
   private void drawHeader(GameState state) {
+    if (!inPaintArea(0, 0, CANVAS_X, CANVAS_VERTICAL_INC)) {
+      return;
+    }
+    long start = this.profiler.start();
     //draw header bg
     fill(color(21, 0, 41));
     stroke(color(21, 0, 41));
     rectMode(CORNER);
     rect(0, 0, CANVAS_X, CANVAS_VERTICAL_INC);
     //draw header title
-    fill(color(115, 49, 180));
-    stroke(color(115, 49, 180));
-    textAlign(TOP, LEFT);
-    textSize(TEXTSIZE_TITLE);
-    text("SpaceChallenge", 20, 50);
-    if (this.numOfPlayers != null) { //after single vs. dual play mode has been chosen,
-      textAlign(TOP, LEFT);          //add it to the header
-      textSize(TEXTSIZE_SUBTITLE);
-      if (this.numOfPlayers == 1) {
-        fill(color(250, 0, 255));
-        stroke(color(250, 0, 255));
-        text("Single-Player Mode", 300, 50);
+    drawLabel("SpaceChallenge", TEXTSIZE_TITLE, color(115, 49, 180), LEFT, BASELINE, 20, 50);
+    if (this.engine.hasPlayers()) { //after single vs. dual play mode has been chosen, add it to the header
+      if (this.engine.getTournament() != null) {
+        drawLabel("Tournament, Round " + this.engine.getMatchRound(), TEXTSIZE_SUBTITLE, color(255, 153, 0), LEFT, BASELINE, 
+            (int)(CANVAS_X/3.2), (int)(CANVAS_Y/10.8));
+      }
+      else if (this.engine.getNumOfPlayers() == 1) {
+        drawLabel("Single-Player Mode", TEXTSIZE_SUBTITLE, color(250, 0, 255), LEFT, BASELINE, 300, 50);
       } 
-      else if (this.numOfPlayers == 2) {
-        fill(color(0, 224, 255));
-        stroke(color(0, 224, 255));
-        text("Dual-Player Mode", (int)(CANVAS_X/3.2), (int)(CANVAS_Y/10.8));
+      else if (this.engine.getNumOfPlayers() == 2) {
+        drawLabel("Dual-Player Mode", TEXTSIZE_SUBTITLE, color(0, 224, 255), LEFT, BASELINE, (int)(CANVAS_X/3.2), (int)(CANVAS_Y/10.8));
       }
     }
     if ((model.getGameState() == GameState.PLAYING_STALE)
         || (model.getGameState() == GameState.PLAYING_ACTIVE)
         || (model.getGameState() == GameState.FINAL)){
-      for (int i = 0; i < numOfPlayers; i++) {
-        drawScoreBoard(i);
+      for (int i = 0; i < this.engine.getNumOfPlayers(); i++) {
+        if (inPaintArea(getScoreBoardX(i), 0, CANVAS_X/6, CANVAS_VERTICAL_INC)) {
+          drawScoreBoard(i);
+        }
       }
     }
+    this.profiler.stop(FrameProfiler.Section.HEADER, start);
   }
 
   /**
@@ -457,9 +864,10 @@ public class Processing extends PApplet {
    * @param playerKey the index of the player to draw the scoreboard for
    */
   private void drawScoreBoard(int playerKey) {
+    long start = this.profiler.start();
     int boardWidth = CANVAS_X/6;
     int boardHeight = CANVAS_VERTICAL_INC;
-    int variableWidth = (playerKey * (boardWidth + 12));
+    int variableWidth = CANVAS_X - getScoreBoardX(playerKey) - boardWidth;
     if (playerKey == this.model.getTurn()) {
       fill(color(110,0,149));
       stroke(color(110,0,149));
@@ -472,37 +880,37 @@ public class Processing extends PApplet {
     rect(CANVAS_X - (boardWidth + variableWidth), 
         0, boardWidth, boardHeight);
 
-    textAlign(CENTER, BOTTOM);
-
     //player name
-    fill(color(235,178,255));
-    stroke(color(235,178,255));
-    textSize(TEXTSIZE_SUBTITLE);
-    text(this.model.getPlayer(playerKey).getName(), 
+    drawLabel(this.model.getPlayer(playerKey).getName(), TEXTSIZE_SUBTITLE, color(235,178,255), CENTER, BOTTOM, 
         CANVAS_X - (boardWidth + variableWidth) + boardWidth/2, 22);
 
     //static text
-    fill(color(210,79,255));
-    stroke(color(210,79,255));
-    textSize(TEXTSIZE_SUBTITLE);
-    text("seconds",
+    int captionColor = color(210,79,255);
+    drawLabel("seconds", TEXTSIZE_SUBTITLE, captionColor, CENTER, BOTTOM, 
         CANVAS_X - (boardWidth + variableWidth) + 64, 48);
-    textSize(TEXTSIZE_CAPTION);
-    text("time remaining", 
+    drawLabel("time remaining", TEXTSIZE_CAPTION, captionColor, CENTER, BOTTOM, 
         CANVAS_X - (boardWidth + variableWidth) + 56, 66);
-    textSize(TEXTSIZE_CAPTION);
-    text("points", 
+    drawLabel("points", TEXTSIZE_CAPTION, captionColor, CENTER, BOTTOM, 
         CANVAS_X - (boardWidth + variableWidth) + 138, 66);
 
-    //variable text
-    fill(255);
-    stroke(255);
-    textSize(TEXTSIZE_CAPTION);
-    text(this.model.getPlayer(playerKey).getScore(),
+    //variable text (drawn from the digit atlas)
+    this.textCache.drawNumber(this, this.snapshot.getScore(playerKey), 0, TEXTSIZE_CAPTION, color(255), CENTER, BOTTOM, 
         CANVAS_X - (boardWidth + variableWidth) + 138, 48);//points
-    textSize(TEXTSIZE_CAPTION);
-    text(this.model.getPlayer(playerKey).timer.currentCountdownTime,
-        CANVAS_X - (boardWidth + variableWidth) + 24, 48);//sec remaining
+    int remainingMillis = this.snapshot.getRemainingMillis(playerKey);
+    this.textCache.drawNumber(this, (remainingMillis + 50) / 100, 1, TEXTSIZE_CAPTION, color(255), CENTER, BOTTOM, 
+        CANVAS_X - (boardWidth + variableWidth) + 20, 48);//sec remaining (in tenths)
+    this.profiler.stop(FrameProfiler.Section.SCOREBOARD, start);
+  }
+
+  /**
+   * Returns the x position of the left side of the given player's scoreboard (the scoreboards are lined up 
+   * from the right side of the header).
+   * @param playerKey the index of the player
+   * @return the x position of the scoreboard
+   */
+  private int getScoreBoardX(int playerKey) {
+    int boardWidth = CANVAS_X/6;
+    return CANVAS_X - (boardWidth + playerKey * (boardWidth + 12));
   }
 
   /**
@@ -511,19 +919,46 @@ public class Processing extends PApplet {
    * and provides a button to confirm the reset and another one to cancel the reset.
    */
   private void drawResetMessagePopUp() {
-    if (numOfPlayers != null) {
+    long start = this.profiler.start();
+    if (this.engine.hasPlayers()) {
       fill(100);
       stroke(100);
       rectMode(CENTER);
       rect(CANVAS_X/2, CANVAS_Y/2, CANVAS_X/2, CANVAS_Y/2);fill(255);
-      fill(255);
-      stroke(255);
-      textAlign(CENTER, CENTER);
-      textSize(TEXTSIZE_SUBTITLE);
-      text("Are you sure you want to reset?", CANVAS_X/2, CANVAS_Y/3);
-      drawButton(this.btnResetConfirm, (CANVAS_X/2 - BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*2.7), 0, 0, 0, 50, 50, 50, "Yes, reset", 255, 255, 255);
-      drawButton(this.btnResetCancel, (CANVAS_X/2 - BTN_WIDTH/2), (int)(CANVAS_VERTICAL_INC*4), 0, 0, 0, 50, 50, 50, "No, go back", 255, 255, 255);
+      drawLabel("Are you sure you want to reset?", TEXTSIZE_SUBTITLE, color(255), CENTER, CENTER, CANVAS_X/2, CANVAS_Y/3);
+      drawButton(this.btnResetConfirm);
+      drawButton(this.btnResetCancel);
     }
+    this.profiler.stop(FrameProfiler.Section.POPUP, start);
+  }
+
+
+
+
+  /**
+   * Draws the timing overlay in the bottom left corner of the canvas, which shows the median (p50) and p99
+   * frame time and input-to-render latency (in milliseconds) of the current game state, and how much of the canvas
+   * has been repainted, how many frames were drawn, and the CPU usage while no round is running.
+   * The overlay is shown/hidden with the HUD_TOGGLE_KEY.
+   */
+  private void drawProfilerHud() {
+    LatencyHistogram frame = this.profiler.getHistogram(FrameProfiler.Section.FRAME);
+    LatencyHistogram input = this.profiler.getHistogram(FrameProfiler.Section.INPUT_TO_RENDER);
+    fill(0, 180);
+    noStroke();
+    rectMode(CORNER);
+    rect(0, CANVAS_Y - HUD_HEIGHT, CANVAS_X/3, HUD_HEIGHT);
+    fill(255);
+    textAlign(LEFT, TOP);
+    textSize(TEXTSIZE_CAPTION);
+    text(String.format("frame   p50 %6.2f ms   p99 %6.2f ms", frame.getPercentile(50) / 1e6, frame.getPercentile(99) / 1e6), 
+        8, CANVAS_Y - 76);
+    text(String.format("input   p50 %6.2f ms   p99 %6.2f ms", input.getPercentile(50) / 1e6, input.getPercentile(99) / 1e6), 
+        8, CANVAS_Y - 58);
+    text(String.format("paint   %5.1f%%   full %d  partial %d  skipped %d", this.damage.getRepaintedFraction() * 100, 
+        this.damage.getFullFrames(), this.damage.getPartialFrames(), this.damage.getSkippedFrames()), 8, CANVAS_Y - 40);
+    text(String.format("redraw  %d frames (%d on demand)   idle cpu %4.1f%%", this.redrawScheduler.getFramesRendered(), 
+        this.redrawScheduler.getOnDemandFrames(), this.redrawScheduler.getIdleCpuUsage() * 100), 8, CANVAS_Y - 22);
   }
 
 
@@ -538,46 +973,68 @@ public class Processing extends PApplet {
    * depending on the state of the game. The mouse clicks trigger responses by different buttons.
    * All buttons are unique to a GameState (e.g. START button is in the STALE state, NEXT button 
    * is in the ACTIVE state), except for the RESET button which is in all game states, 
-   * except for the very first screen.
+   * except for the very first screen. The clicked button is looked up in the scene graph (see createScene).
    */
   public void mouseClicked() {
-    switch (model.getGameState()) {
-      case INTRO:
-        if (numOfPlayers == null) { //number of players (single vs. dual) has not yet been chosen
-          playModeButtonListener();
-        }
-        else { //time to type player names
-          confirmButtonListener();
-        }
-        break;
-      case PLAYING_STALE:
-        startButtonListener();
-        break;
-      case PLAYING_ACTIVE:
-        if (this.timesUpMsgShowing) { //only when a player's time is up
-          nextButtonListener(); 
-        }
-        break;
-      case FINAL:
-        break;
-      default:
-        throw new IllegalStateException();
+    if (this.recorder != null) {
+      this.recorder.click(mouseX, mouseY);
     }
-    resetButtonListener(); //reset button in all game states
+    long start = this.profiler.start();
+    GameState state = model.getGameState();
+    //the clicked button is found in the scene graph of the current state (or of the reset pop-up, while it is showing)
+    UiNode node = this.scene.nodeAt(state, this.resetMsgShowing, mouseX, mouseY);
+    if (node != null) {
+      this.loop.apply(node::click); //between two ticks of the game logic, after the presses that arrived before the click
+    }
+    this.profiler.stopInput(state, FrameProfiler.Section.MOUSE, start);
   }
 
   //MOUSECLICK helpers------------------------------------  
 
   /**
-   * Listens to the play mode buttons (i.e. SINGLE vs. DUAL), during the INTRO game state.
-   * Sets up the player variables, depending on the number of players indicated by the clicking of one of the buttons.
+   * Listens to the TOURNAMENT button, during the INTRO game state (the SINGLE and DUAL buttons directly 
+   * set up the player variables for their number of players).
+   * Loads the tournament and sets up the player variables for its matches.
    */
-  private void playModeButtonListener() {
-    if (clickedOn(this.btnSingle)) { // single player mode
-      setPlayerVariables(1);
+  private void tournamentButtonListener() {
+    Tournament tournament = loadTournament();
+    if (tournament != null && this.engine.startTournament(tournament)) {
+      setPlayerVariables(0); //the engine has already added the two players of each match
     }
-    else if (clickedOn(this.btnDual)) { //two players mode
-      setPlayerVariables(2);
+  }
+
+  /**
+   * Determines if a tournament can be played, i.e. if the ENTRANTS_PROPERTY system property is set.
+   * @return true if the tournament button should be shown
+   */
+  private boolean isTournamentAvailable() {
+    return System.getProperty(ENTRANTS_PROPERTY) != null;
+  }
+
+  /**
+   * Loads a tournament from the entrants file given by the ENTRANTS_PROPERTY system property 
+   * (one name per line, cut to NAME_MAX_LENGTH characters), in the format given by the FORMAT_PROPERTY system property.
+   * @return the tournament, or null if the file couldn't be read or has fewer than 2 entrants
+   */
+  private Tournament loadTournament() {
+    String path = System.getProperty(ENTRANTS_PROPERTY);
+    try {
+      List<String> names = new ArrayList<String>();
+      for (String line : Files.readAllLines(Paths.get(path))) {
+        String name = line.trim();
+        if (!name.isEmpty()) {
+          names.add(name.length() > NAME_MAX_LENGTH ? name.substring(0, NAME_MAX_LENGTH) : name);
+        }
+      }
+      if (names.size() < 2) {
+        System.err.println("A tournament needs at least 2 entrants in " + path);
+        return null;
+      }
+      String format = System.getProperty(FORMAT_PROPERTY, Tournament.Format.ELIMINATION.name());
+      return new Tournament(Tournament.Format.valueOf(format.toUpperCase()), names);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("Could not load the tournament from " + path + ": " + e.getMessage());
+      return null;
     }
   }
 
@@ -588,57 +1045,71 @@ public class Processing extends PApplet {
    * then moves onto the next game state.
    */
   private void confirmButtonListener() {
-    if (clickedOn(this.btnConfirmName)) {
-      if (checkAllNameBoxesFilled()) {//check that all names have been filled.
-        for (int i = 0; i < numOfPlayers; i++) {
-          this.model.getPlayer(i).setName(this.nameBoxes.get(i)); //set players' names
-        }
-        this.model.setGameState(GameState.PLAYING_STALE); //move onto next game state.
+    if (checkAllNameBoxesFilled()) {//check that all names have been filled.
+      String[] names = new String[this.engine.getNumOfPlayers()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = this.nameBoxes.get(i).toString();
       }
+      this.engine.confirmNames(names); //set players' names and move onto next game state.
     }
   }
 
   /**
    * Determines if all name boxes have been filled -- returns true if they have been, false if there still are empty boxes.
+   * The number of empty name boxes is kept up to date as they are typed into, so the boxes aren't checked at every frame.
    * @return true if all name boxes have been filled, false if they haven't
    */
   private boolean checkAllNameBoxesFilled() {
-    for (Map.Entry<Integer, String> set : this.nameBoxes.entrySet()) { //for all name boxes
-      String name = set.getValue();
-      if (name == "") {
-        return false;
-      }
-    }
-    return true;
+    return this.emptyNameBoxes == 0;
   }
 
   /**
    * Sets up all variables that is required for the players, based on given number of players.
-   * - the number of players is saved to the numOfPlayers variable,
-   * - a new player object is added to the model for the given number of players,
-   * - a list of circles and a list of color values (rgb), is added for each player, and
-   * - a name box is created for each player, containing an empty string.
+   * - a new player object is added to the model (through the engine) for the given number of players,
+   * - a circle buffer (with its quadtree index), an offscreen circle layer and a circle generator is added for each player, and
+   * - a name box is created for each player, which is empty.
+   * 
+   * A tournament reuses these for every match, so they don't grow with the number of entrants, and a game after
+   * a reset reuses the ones of the earlier games (emptied, with a newly seeded generator).
    * 
-   * @param numOfPlayers the number of players in this game.
+   * @param numOfPlayers the number of players in this game (0 if the players were already added, e.g. for a tournament).
    */
   private void setPlayerVariables(int numOfPlayers) {
-    this.numOfPlayers = numOfPlayers;
-    this.model.addPlayers(numOfPlayers);
-    for (int i = 0; i < numOfPlayers; i++) {
-      this.listOfPlayersCircles.add(new ArrayList<PShape>());
-      this.listOfColors.add(new ArrayList<Integer[]>());
-      this.nameBoxes.put(i, "");
+    if (numOfPlayers > 0) {
+      this.engine.choosePlayers(numOfPlayers);
+    }
+    for (int i = 0; i < this.engine.getNumOfPlayers(); i++) {
+      if (i < this.listOfPlayersCircles.size()) { //reused from an earlier game
+        this.listOfPlayersCircles.get(i).clear();
+        this.circleIndexes.get(i).clear();
+        this.circleLayers.get(i).clear();
+        this.circleRandom.splitInto(this.circleGenerators.get(i));
+      }
+      else {
+        CircleBuffer circles = new CircleBuffer(CircleBuffer.DEFAULT_CAPACITY, this.maxCircles);
+        this.listOfPlayersCircles.add(circles);
+        this.circleIndexes.add(new CircleIndex(circles, CANVAS_X, CANVAS_Y));
+        this.circleLayers.add(new CircleLayer(CANVAS_X, CANVAS_Y));
+        this.circleGenerators.add(this.circleRandom.split());
+      }
+      if (i < this.nameBoxes.size()) {
+        this.nameBoxes.get(i).clear();
+      }
+      else {
+        this.nameBoxes.add(new TextField(NAME_MAX_LENGTH));
+      }
     }
+    this.emptyNameBoxes = this.engine.getNumOfPlayers();
   }
 
   /**
    * Listens to the START button before a player start's their round.
    * The timer starts and player enters the actual game play stage as soon as the button is clicked.
+   * The player's circles are generated ahead of time, so that scoring a point only needs to add the next one.
    */
   private void startButtonListener() {
-    if (clickedOn(this.btnStart)) {
-      this.model.getPlayer(model.getTurn()).timer.setStartTime(millis());
-      this.model.setGameState(GameState.PLAYING_ACTIVE);
+    if (this.engine.start()) {
+      this.circleGenerators.get(this.model.getTurn()).precompute(PRECOMPUTED_CIRCLES);
     }
   }
 
@@ -648,49 +1119,23 @@ public class Processing extends PApplet {
    * If all players have already played, then goes to the final screen.
    */
   private void nextButtonListener() {
-    if (clickedOn(this.btnNext)) {
-      if (model.getTurn() < this.numOfPlayers - 1) { //there are still more players who need to play
-        model.nextTurn();
-        model.setGameState(GameState.PLAYING_STALE);
-      }
-      else { //last player's turn
-        model.setGameState(GameState.FINAL);
-      }
-      this.timesUpMsgShowing = false;
-    }
+    this.engine.next(); //next player's turn, or the final screen if all players have played
   }
 
   /**
-   * Listens to the RESET button during all stages throughout the game (except for very first screen).
-   * When the user clicks on the reset button, a reset message pops up asking if the user is sure.
-   * If this message is showing, and the user clicks on the RESET CONFIRM button, the game resets.
-   * If the user clicks on the RESET CANCEL button, the reset message goes away.
+   * Listens to the NEXT MATCH button on the final screen of a tournament match.
+   * The next match reuses the players' circle buffers and layers, which are cleared.
    */
-  private void resetButtonListener() {
-    if (resetMsgShowing) {
-      if (clickedOn(this.btnResetCancel)) { //cancel reset
-        this.resetMsgShowing = false; //remove pop up screen
-      }
-      else if (clickedOn(this.btnResetConfirm)) { //confirm reset
-        this.setup();//reset
-      }
-    } 
-    else { //detect clicking on reset button
-      if (clickedOn(this.btnReset) && numOfPlayers != null) {
-        this.resetMsgShowing = true;
+  private void nextMatchButtonListener() {
+    if (this.engine.nextMatch()) {
+      for (int i = 0; i < this.engine.getNumOfPlayers(); i++) {
+        this.listOfPlayersCircles.get(i).clear();
+        this.circleIndexes.get(i).clear();
+        redrawCircleLayer(i); //the layer becomes empty
       }
     }
   }
 
-  /**
-   * Determines if the mouse has clicked on the given button
-   * @param btn the given button to be checked for mouse click
-   * @return true if the mouse click's position is within the given button's area
-   */
-  private boolean clickedOn(PShape btn) {
-    return (btn.getVertexX(0) <= mouseX && mouseX <= btn.getVertexX(0)+ btn.height)
-        && (btn.getVertexY(0) <= mouseY && mouseY <= btn.getVertexY(0)+ btn.height);
-  }
 
 
 
@@ -700,48 +1145,147 @@ public class Processing extends PApplet {
   //KEYBOARD--------------------------------------------------------------------
   //----------------------------------------------------------------------------
 
+  /**
+   * Receives every event from the window as soon as it arrives (before Processing queues it for keyPressed etc.).
+   * Key presses and releases are stamped with the current time and added to the input buffer, 
+   * where they wait to be handled by handleInput.
+   * While the sketch isn't looping, a frame is asked for to handle the event, unless it is the mouse moving
+   * without going onto or away from a button or name box.
+   * @param event the event from the window
+   */
+  public void postEvent(Event event) {
+    if (event instanceof KeyEvent && this.engine != null) {
+      KeyEvent keyEvent = (KeyEvent) event;
+      if (keyEvent.getAction() == KeyEvent.PRESS) {
+        this.inputBuffer.offer(InputRingBuffer.KEY_DOWN, keyEvent.getKey(), keyEvent.getKeyCode(), this.engine.nanoTime());
+      }
+      else if (keyEvent.getAction() == KeyEvent.RELEASE) {
+        this.inputBuffer.offer(InputRingBuffer.KEY_UP, keyEvent.getKey(), keyEvent.getKeyCode(), this.engine.nanoTime());
+      }
+    }
+    super.postEvent(event);
+    if (this.redrawScheduler != null) {
+      this.redrawScheduler.eventQueued(!(event instanceof MouseEvent) || changesHover((MouseEvent) event));
+    }
+  }
+
+  /**
+   * Handles the queued events (mouse clicks, key presses etc.), but only on the thread that draws the frames:
+   * Processing handles the events as soon as they arrive while the sketch isn't looping, which would otherwise 
+   * change the game from the window's thread (see draw, which handles them at the start of each frame).
+   */
+  protected void dequeueEvents() {
+    if (Thread.currentThread() == this.animationThread) {
+      super.dequeueEvents();
+    }
+  }
+
+  /**
+   * Determines if the given mouse event moves the mouse onto or away from a button or name box 
+   * (any other mouse event, e.g. a click, is assumed to change something).
+   * @param event the mouse event
+   * @return true if the event can change what is drawn
+   */
+  private boolean changesHover(MouseEvent event) {
+    if ((event.getAction() != MouseEvent.MOVE && event.getAction() != MouseEvent.DRAG) || this.scene == null) {
+      return true;
+    }
+    GameState state = this.model.getGameState();
+    return this.scene.nodeAt(state, false, event.getX(), event.getY()) != this.hoveredNode
+        || (this.resetMsgShowing && this.scene.nodeAt(state, true, event.getX(), event.getY()) != this.hoveredOverlayNode);
+  }
+
+  /**
+   * Handles one timestamped key event from the input buffer (used for the SPACE bar presses that score points).
+   * Presses are paired with releases, so that a key being held down (auto-repeat) only counts once, 
+   * and each press is scored by the engine by the time it arrived, not by when it is handled.
+   * This is the game logic's handler of the input buffer, so it runs at each tick of the game loop (on the loop's thread,
+   * in the window), and it must not touch anything that is only used by the drawing thread.
+   * @param type the type of the event (InputRingBuffer.KEY_DOWN or KEY_UP)
+   * @param key the character of the key
+   * @param keyCode the code of the key
+   * @param nanos the time at which the event arrived
+   */
+  private void handleInput(int type, char key, int keyCode, long nanos) {
+    if (this.recorder != null) {
+      this.recorder.key(type, key, keyCode, nanos);
+    }
+    if (key != ' ') {
+      return;
+    }
+    if (type == InputRingBuffer.KEY_UP) {
+      this.spaceDown = false;
+      this.spaceReleasedAt = nanos;
+      return;
+    }
+    //auto-repeat: the key was never released, or it was released and pressed again at the same instant
+    boolean autoRepeat = this.spaceDown || (this.spaceReleasedAt != 0 && nanos - this.spaceReleasedAt < AUTO_REPEAT_GAP_NANOS);
+    this.spaceDown = true;
+    if (autoRepeat) {
+      return;
+    }
+    //increase the score (the engine ignores presses that happened outside of the current player's round);
+    //the point's circle is added by the next frame that reads the score (see updateFromLogic)
+    this.engine.press(nanos);
+  }
+
   /**
    * Executes commands for when a keyboard input occurs while the program is running, depending on the state of the game. 
    * Currently, there are two points in which keyboard inputs are utilized within the game. 
    * The first is during the INTRO state where the user is inputting the names of the players, and 
    * the second is during the ACTIVE playing state where the user is hitting the SPACEbar to score points.
+   * Scoring points is not done here, but in handleInput (through the timestamped input buffer).
    */
   public void keyPressed() {
+    if (this.recorder != null) {
+      this.recorder.typed(key, keyCode, mouseX, mouseY);
+    }
+    //0. Keyboard shortcut for showing/hiding the timing overlay
+    if (key == CODED && keyCode == HUD_TOGGLE_KEY) {
+      this.hudShowing = !this.hudShowing;
+      return;
+    }
+    long start = this.profiler.start();
+    GameState state = this.model.getGameState();
     //1. Keyboard functionality for entering player names
-    if (this.model.getGameState() == GameState.INTRO) {
-      if (numOfPlayers != null) { //name entering screen
-        for (int i = 0; i < numOfPlayers; i++) {
+    if (state == GameState.INTRO) {
+      if (this.engine.hasPlayers()) { //name entering screen
+        for (int i = 0; i < this.engine.getNumOfPlayers(); i++) {
           //if the user is hovering over a name box, enable typing into that box
           if (hoverOverNameBox() == i) {
-            String orig = this.nameBoxes.get(i);
-            if (orig != "" && key == BACKSPACE) { //backspace functionality (except when a name box has nothing in it)
-              this.nameBoxes.put(i, orig.substring(0, orig.length()-1));
+            TextField nameBox = this.nameBoxes.get(i);
+            boolean wasEmpty = nameBox.isEmpty();
+            boolean changed;
+            if (key == BACKSPACE) { //backspace functionality (nothing happens at the start of a name box)
+              changed = nameBox.backspace();
             }
-            else if (key == '\n') { //disabling enter key
-              //do nothing
+            else if (key == DELETE) {
+              changed = nameBox.delete();
             }
-            else { //adding typed key to the original string in the name box
-              this.nameBoxes.put(i, orig + key);
+            else if (key == CODED) { //moving the caret with the arrow keys
+              changed = keyCode == LEFT ? nameBox.moveCaret(-1) : keyCode == RIGHT ? nameBox.moveCaret(1) : false;
             }
+            else { //adding typed key at the caret (the enter key, other unprintable keys and keys past the limit do nothing)
+              changed = nameBox.type(key);
+            }
+            if (!changed) {
+              continue;
+            }
+            if (nameBox.isEmpty() != wasEmpty) {
+              this.emptyNameBoxes += wasEmpty ? -1 : 1;
+            }
+            //repaint the name box and the CONFIRM button (which is enabled once all names are typed)
+            this.damage.add(CANVAS_X/2 - NAMEBOX_WIDTH/2, CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*i) - NAMEBOX_HEIGHT/2, 
+                NAMEBOX_WIDTH, NAMEBOX_HEIGHT);
+            this.damage.add(this.btnConfirmName.getX(), this.btnConfirmName.getY(), 
+                this.btnConfirmName.getWidth(), this.btnConfirmName.getHeight());
           }
         }       
       }
     }
-    //2. Keyboard functionality for player scoring points
-    else if (model.getGameState() == GameState.PLAYING_ACTIVE) {
-      if (key == ' ' && !timesUpMsgShowing) {
-        int turn = model.getTurn();
-        //increase the score
-        model.getPlayer(turn).scoreUp();
-        //add a circle with a random diameter at a random position on the canvas
-        int randomDiameter = (int)random(200);
-        PShape randomCircle = createShape(ELLIPSE, random(CANVAS_X), random(CANVAS_Y), randomDiameter, randomDiameter);
-        listOfPlayersCircles.get(turn).add(randomCircle);
-        //add random rgb color values for this random circle
-        Integer[] randomColors = {(int)random(255),(int)random(255),(int)random(255)};
-        listOfColors.get(turn).add(model.getPlayer(turn).getScore()-1, randomColors);
-      }
-    }
+    //2. Keyboard functionality for player scoring points is in handleInput, 
+    //   which handles the presses from the input buffer at the start of each frame.
+    this.profiler.stopInput(state, FrameProfiler.Section.KEY, start);
   }
 
   /**
@@ -749,15 +1293,53 @@ public class Processing extends PApplet {
    * Returns -1 if the user's mouse is NOT hovering over any of the name boxes.
    * @return the number of the name box that the mouse is hovering over, -1 if none.
    */
-  private Integer hoverOverNameBox() {
-    for (int i = 0; i < numOfPlayers; i++) {
-      if ((CANVAS_X/2 - (NAMEBOX_WIDTH/2) <= mouseX && mouseX <= CANVAS_X/2 + (NAMEBOX_WIDTH/2))
-          && (CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*i) - (NAMEBOX_HEIGHT/2) <= mouseY
-          && mouseY <= CANVAS_VERTICAL_INC*3 + (CANVAS_VERTICAL_INC*i) + (NAMEBOX_HEIGHT/2))) {
-        return i;
+  private int hoverOverNameBox() {
+    UiNode node = this.scene.nodeAt(model.getGameState(), this.resetMsgShowing, mouseX, mouseY);
+    return node == null ? -1 : node.getTag(); //only name boxes have a tag
+  }
+
+
+
+  //----------------------------------------------------------------------------
+  //EXIT------------------------------------------------------------------------
+  //----------------------------------------------------------------------------
+
+  /**
+   * Called when the program exits. The game logic's thread is stopped, the results store and the session recording are closed, and if the PROFILE_CSV_PROPERTY 
+   * system property is set, the recorded timings are written to the csv file at that path.
+   */
+  public void dispose() {
+    if (this.loop != null) {
+      this.loop.close();
+    }
+    if (this.redrawScheduler != null) {
+      this.redrawScheduler.close();
+    }
+    if (this.recorder != null) {
+      try {
+        this.recorder.close();
+      } catch (IOException e) {
+        System.err.println("Could not close the session recording: " + e.getMessage());
+      }
+    }
+    if (this.results != null) {
+      try {
+        this.results.close();
+      } catch (IOException e) {
+        System.err.println("Could not close the results: " + e.getMessage());
+      }
+    }
+    String path = System.getProperty(PROFILE_CSV_PROPERTY);
+    if (path != null && this.profiler != null) {
+      try {
+        this.profiler.writeCsv(path);
+      } catch (IOException e) {
+        System.err.println("Could not write timings to " + path + ": " + e.getMessage());
       }
     }
-    return -1;
+    if (this.surface != null) { //a sketch drawn offscreen (see OffscreenRenderer) has no window to close
+      super.dispose();
+    }
   }
 
 
@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import processing.core.PApplet;
+
+/**
+ * Decides when a sketch draws a frame. While something on the canvas changes at every frame (e.g. the countdown
+ * of a running round), the sketch loops at its frame rate. Otherwise the loop is stopped (noLoop), and a single
+ * frame is drawn (redraw) only when something asks for it: an input event, the mouse moving onto or away from
+ * a button, or a timer deadline (run on this scheduler's timer thread).
+ *
+ * A redraw that is asked for while a frame is being drawn might not be seen by that frame, so the sketch keeps
+ * looping for one more frame, and a redraw that is still pending shortly after it was asked for is asked for again.
+ *
+ * The scheduler keeps the number of frames drawn, and how much CPU time the whole process used while the
+ * sketch wasn't looping (the idle CPU usage).
+ * @author stefanieim
+ */
+public class RedrawScheduler {
+  public final static int MAX_QUEUED_EVENTS = 64; //events that can wait for a frame without asking for one
+  public final static long RETRY_MILLIS = 50; //time after which a pending redraw is asked for again
+
+  private final PApplet sketch;
+  private final ScheduledExecutorService timer; //runs the deadlines (one daemon thread)
+  private volatile boolean looping; //true if the sketch is drawing at every frame
+  private final AtomicLong redrawRequests; //number of redraws asked for (from any thread)
+  private final AtomicBoolean pending; //true if a redraw was asked for since the start of the current frame
+  private final AtomicBoolean retryScheduled; //true if the timer will ask for a pending redraw again
+  private final AtomicInteger queuedEvents; //events that arrived since the start of the current frame without asking for one
+
+  //frames drawn so far (by the sketch's animation thread only)
+  private long framesRendered;
+  private long onDemandFrames; //frames drawn while the sketch wasn't looping
+
+  //time (in nanoseconds) spent not looping, and the CPU time used by the process during that time
+  private final OperatingSystemMXBean os;
+  private long idleSince, idleCpuSince; //start of the current idle period (when not looping)
+  private long idleNanos, idleCpuNanos; //all finished idle periods
+
+  /**
+   * Creates a new scheduler for the given sketch, which is assumed to be looping (as sketches do when they start).
+   * @param sketch the sketch to schedule the frames of
+   */
+  public RedrawScheduler(PApplet sketch) {
+    this.sketch = sketch;
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "redraw-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.looping = true;
+    this.redrawRequests = new AtomicLong();
+    this.pending = new AtomicBoolean();
+    this.retryScheduled = new AtomicBoolean();
+    this.queuedEvents = new AtomicInteger();
+    this.os = ManagementFactory.getOperatingSystemMXBean();
+  }
+
+  /**
+   * Returns the timer that deadlines can be scheduled on (e.g. by the GameEngine, for the end of each round).
+   * @return the timer of this scheduler
+   */
+  public ScheduledExecutorService getTimer() {
+    return this.timer;
+  }
+
+  /**
+   * Asks for a frame to be drawn (can be called from any thread). While the sketch is looping, the next frame 
+   * is drawn anyway, and the loop isn't stopped before it.
+   */
+  public void requestRedraw() {
+    this.redrawRequests.incrementAndGet();
+    this.pending.set(true);
+    if (!this.looping) {
+      this.sketch.redraw();
+      if (this.retryScheduled.compareAndSet(false, true)) {
+        this.timer.schedule(this::retry, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Called (from any thread) when an input event arrived, which is handled at the start of the next frame.
+   * Events that don't change anything on the canvas (e.g. the mouse moving within a button) only ask for a frame 
+   * once MAX_QUEUED_EVENTS of them are waiting.
+   * @param needsRedraw true if the event changes something on the canvas
+   */
+  public void eventQueued(boolean needsRedraw) {
+    if (needsRedraw || this.queuedEvents.incrementAndGet() >= MAX_QUEUED_EVENTS) {
+      requestRedraw();
+    }
+  }
+
+  /**
+   * Called at the start of every frame drawn by the sketch, before the events that arrived are handled
+   * (those events, and all redraws asked for until now, are covered by this frame).
+   */
+  public void beginFrame() {
+    this.pending.set(false);
+    this.queuedEvents.set(0);
+  }
+
+  /**
+   * Called at the end of every frame drawn by the sketch, with whether the next frame can look different
+   * even if nothing asks for it: if so (or if a redraw was asked for during the frame) the sketch keeps 
+   * (or starts) looping, and if not the loop is stopped.
+   * @param animating true if the canvas changes at every frame (e.g. a round is running)
+   */
+  public void frameRendered(boolean animating) {
+    animating |= this.pending.get();
+    this.framesRendered++;
+    if (!this.looping) {
+      this.onDemandFrames++;
+    }
+    if (animating && !this.looping) {
+      this.idleNanos += System.nanoTime() - this.idleSince;
+      this.idleCpuNanos += getProcessCpuNanos() - this.idleCpuSince;
+      this.looping = true;
+      this.sketch.loop();
+    }
+    else if (!animating && this.looping) {
+      this.idleSince = System.nanoTime();
+      this.idleCpuSince = getProcessCpuNanos();
+      this.looping = false;
+      this.sketch.noLoop();
+    }
+  }
+
+  /**
+   * Asks for a redraw again if the one that was asked for hasn't been drawn yet (run on the timer thread).
+   */
+  private void retry() {
+    this.retryScheduled.set(false);
+    if (this.pending.get() && !this.looping) {
+      this.sketch.redraw();
+    }
+  }
+
+  /**
+   * Stops the timer (deadlines that haven't been reached yet are dropped).
+   */
+  public void close() {
+    this.timer.shutdownNow();
+  }
+
+  /**
+   * Determines if the sketch is looping (drawing at every frame).
+   * @return true if the sketch is looping
+   */
+  public boolean isLooping() {
+    return this.looping;
+  }
+
+  /**
+   * Returns the number of frames drawn so far.
+   * @return the number of frames drawn
+   */
+  public long getFramesRendered() {
+    return this.framesRendered;
+  }
+
+  /**
+   * Returns the number of frames drawn so far because they were asked for (while the sketch wasn't looping).
+   * @return the number of frames drawn on demand
+   */
+  public long getOnDemandFrames() {
+    return this.onDemandFrames;
+  }
+
+  /**
+   * Returns the number of redraws asked for so far (including the ones that happened while looping).
+   * @return the number of redraw requests
+   */
+  public long getRedrawRequests() {
+    return this.redrawRequests.get();
+  }
+
+  /**
+   * Returns the time spent not looping so far (including the current idle period).
+   * @return the idle time, in nanoseconds
+   */
+  public long getIdleNanos() {
+    return this.idleNanos + (this.looping ? 0 : System.nanoTime() - this.idleSince);
+  }
+
+  /**
+   * Returns the CPU usage of the process while the sketch wasn't looping, as a fraction of one core
+   * (e.g. 0.02 for 2% of a core). Returns -1 if the CPU time of the process isn't available.
+   * @return the idle CPU usage, or -1 if unknown
+   */
+  public double getIdleCpuUsage() {
+    long wall = getIdleNanos();
+    long cpu = this.idleCpuNanos + (this.looping ? 0 : getProcessCpuNanos() - this.idleCpuSince);
+    if (getProcessCpuNanos() < 0) {
+      return -1;
+    }
+    return wall == 0 ? 0 : (double) cpu / wall;
+  }
+
+  /**
+   * Returns the CPU time used by the whole process so far (-1 if it isn't available).
+   */
+  private long getProcessCpuNanos() {
+    if (this.os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) this.os).getProcessCpuTime();
+    }
+    return -1;
+  }
+}
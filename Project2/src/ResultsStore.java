@@ -0,0 +1,391 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores the results of all completed rounds on disk, so they are kept after a reset or a restart.
+ *
+ * Results are appended as fixed-size binary records to a memory-mapped log file (results.log).
+ * A memory-mapped index file (results.idx) is updated with every append, so that leaderboard queries
+ * never need to scan the log:
+ * - the all-time top TOP_N results,
+ * - the top PLAYER_TOP_N results of each player (in a fixed-size hash table keyed by the player's name),
+ * - a Fenwick tree of the number of results per score, for the historical rank of any score.
+ * If the index doesn't match the log when the store is opened (e.g. after a crash), it is rebuilt from the log.
+ * @author stefanieim
+ */
+public class ResultsStore implements Closeable {
+  public final static int TOP_N = 100; //number of all-time top results kept in the index
+  public final static int PLAYER_TOP_N = 10; //number of top results kept for each player
+  public final static int NAME_CHARS = 16; //longer names are cut off
+  public final static int MAX_RANKED_SCORE = 65535; //higher scores are ranked as this score
+
+  private final static int LOG_MAGIC = 0x5343524c; //"SCRL"
+  private final static int INDEX_MAGIC = 0x53435249; //"SCRI"
+  private final static int VERSION = 1;
+  private final static int HEADER_SIZE = 64;
+
+  //record layout (in the log)
+  private final static int RECORD_SIZE = 64;
+  private final static int R_SCORE = 0, R_DURATION = 4, R_TIMESTAMP = 8, R_MODE = 16, R_NAME_LENGTH = 17, R_NAME = 18;
+  private final static int INITIAL_CAPACITY = 4096; //number of records the log is first mapped for
+  private final static int MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE; //a mapping is at most 2GB
+
+  //index layout
+  private final static int I_COUNT = 8, I_TOP_COUNT = 16;
+  private final static int ENTRY_SIZE = 8; //score + record number
+  private final static int TOP_OFFSET = HEADER_SIZE;
+  private final static int FENWICK_OFFSET = TOP_OFFSET + TOP_N * ENTRY_SIZE;
+  private final static int FENWICK_SIZE = MAX_RANKED_SCORE + 2; //1-based, one node per score 0..MAX_RANKED_SCORE
+  private final static int PLAYERS_OFFSET = FENWICK_OFFSET + FENWICK_SIZE * 4;
+  private final static int PLAYER_SLOTS = 65536; //power of two
+  private final static int MAX_PROBES = 64; //players that don't find a slot within this many probes have no player top list
+  private final static int S_NAME_LENGTH = 0, S_NAME = 4, S_COUNT = S_NAME + NAME_CHARS * 2, S_TOP = S_COUNT + 4;
+  private final static int SLOT_SIZE = S_TOP + PLAYER_TOP_N * ENTRY_SIZE;
+  private final static int INDEX_SIZE = PLAYERS_OFFSET + PLAYER_SLOTS * SLOT_SIZE;
+
+  private final FileChannel logChannel;
+  private final FileChannel indexChannel;
+  private MappedByteBuffer log;
+  private final MappedByteBuffer index;
+  private int capacity; //number of records the log is currently mapped for
+  private int count; //number of records in the log
+
+  /**
+   * Opens the results store in the given directory, creating its files if they don't exist yet.
+   * @param dir the directory of the results store
+   * @throws IOException if the files can't be opened, or aren't results store files
+   */
+  public ResultsStore(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    this.logChannel = FileChannel.open(dir.resolve("results.log"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.indexChannel = FileChannel.open(dir.resolve("results.idx"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    boolean newLog = this.logChannel.size() == 0;
+    long existing = newLog ? 0 : (this.logChannel.size() - HEADER_SIZE) / RECORD_SIZE;
+    this.capacity = (int) Math.max(INITIAL_CAPACITY, existing);
+    mapLog();
+    if (newLog) {
+      this.log.putInt(0, LOG_MAGIC);
+      this.log.putInt(4, VERSION);
+      this.log.putLong(8, 0);
+    }
+    else if (this.log.getInt(0) != LOG_MAGIC || this.log.getInt(4) != VERSION) {
+      close();
+      throw new IOException("not a results log: " + dir.resolve("results.log"));
+    }
+    this.count = (int) this.log.getLong(8);
+
+    boolean newIndex = this.indexChannel.size() == 0;
+    this.index = this.indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_SIZE);
+    if (newIndex || this.index.getInt(0) != INDEX_MAGIC || this.index.getInt(4) != VERSION
+        || this.index.getLong(I_COUNT) != this.count) {
+      rebuildIndex();
+    }
+  }
+
+  /**
+   * Maps the log file for the current capacity (growing the file if needed).
+   */
+  private void mapLog() throws IOException {
+    this.log = this.logChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.capacity * RECORD_SIZE);
+  }
+
+  //APPEND------------------------------------
+
+  /**
+   * Appends the given result to the log and updates the index.
+   * @param result the result of a completed round
+   * @return the record number of the result
+   * @throws IOException if the log can't be grown
+   */
+  public synchronized int append(RoundResult result) throws IOException {
+    if (this.count == this.capacity) {
+      if (this.capacity == MAX_RECORDS) {
+        throw new IOException("results log is full");
+      }
+      this.capacity = (int) Math.min(MAX_RECORDS, this.capacity * 2L);
+      mapLog();
+    }
+    int record = this.count;
+    int at = recordOffset(record);
+    this.log.putInt(at + R_SCORE, result.getScore());
+    this.log.putInt(at + R_DURATION, result.getDurationMillis());
+    this.log.putLong(at + R_TIMESTAMP, result.getTimestamp());
+    this.log.put(at + R_MODE, (byte) result.getMode().ordinal());
+    String name = result.getName() == null ? "" : result.getName();
+    int length = Math.min(NAME_CHARS, name.length());
+    this.log.put(at + R_NAME_LENGTH, (byte) length);
+    for (int i = 0; i < length; i++) {
+      this.log.putChar(at + R_NAME + i * 2, name.charAt(i));
+    }
+    this.count++;
+    this.log.putLong(8, this.count); //the record is only part of the log once the count includes it
+
+    indexRecord(record);
+    this.index.putLong(I_COUNT, this.count);
+    return record;
+  }
+
+  /**
+   * Adds the record with the given number to the index.
+   */
+  private void indexRecord(int record) {
+    int score = this.log.getInt(recordOffset(record) + R_SCORE);
+    //all-time top
+    int topCount = this.index.getInt(I_TOP_COUNT);
+    topCount = insertTop(TOP_OFFSET, topCount, TOP_N, score, record);
+    this.index.putInt(I_TOP_COUNT, topCount);
+    //rank
+    for (int i = clampScore(score) + 1; i < FENWICK_SIZE; i += i & -i) {
+      int at = FENWICK_OFFSET + i * 4;
+      this.index.putInt(at, this.index.getInt(at) + 1);
+    }
+    //player top
+    int slot = findSlot(recordOffset(record), true);
+    if (slot >= 0) {
+      int at = PLAYERS_OFFSET + slot * SLOT_SIZE;
+      int playerCount = this.index.getInt(at + S_COUNT);
+      playerCount = insertTop(at + S_TOP, playerCount, PLAYER_TOP_N, score, record);
+      this.index.putInt(at + S_COUNT, playerCount);
+    }
+  }
+
+  /**
+   * Inserts the given entry into the sorted (highest score first) list at the given offset of the index.
+   * Entries with the same score stay in the order they were added.
+   * @return the new number of entries in the list
+   */
+  private int insertTop(int offset, int size, int maxSize, int score, int record) {
+    int pos = size;
+    while (pos > 0 && this.index.getInt(offset + (pos - 1) * ENTRY_SIZE) < score) {
+      pos--;
+    }
+    if (pos >= maxSize) {
+      return size; //not high enough
+    }
+    int last = Math.min(size, maxSize - 1);
+    for (int i = last; i > pos; i--) { //shift lower entries down
+      this.index.putInt(offset + i * ENTRY_SIZE, this.index.getInt(offset + (i - 1) * ENTRY_SIZE));
+      this.index.putInt(offset + i * ENTRY_SIZE + 4, this.index.getInt(offset + (i - 1) * ENTRY_SIZE + 4));
+    }
+    this.index.putInt(offset + pos * ENTRY_SIZE, score);
+    this.index.putInt(offset + pos * ENTRY_SIZE + 4, record);
+    return Math.min(size + 1, maxSize);
+  }
+
+  /**
+   * Finds the slot of the player table that holds the name of the record at the given offset of the log.
+   * @param recordAt the offset of a record in the log
+   * @param create true to claim an empty slot if the name isn't in the table yet
+   * @return the slot of the name, -1 if it isn't in the table (or the table is full)
+   */
+  private int findSlot(int recordAt, boolean create) {
+    int length = this.log.get(recordAt + R_NAME_LENGTH);
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + this.log.getChar(recordAt + R_NAME + i * 2);
+    }
+    hash ^= hash >>> 16;
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      int slot = (hash + probe) & (PLAYER_SLOTS - 1);
+      int at = PLAYERS_OFFSET + slot * SLOT_SIZE;
+      int slotLength = this.index.getInt(at + S_NAME_LENGTH) - 1; //stored as length + 1, so 0 means empty
+      if (slotLength < 0) {
+        if (!create) {
+          return -1;
+        }
+        this.index.putInt(at + S_NAME_LENGTH, length + 1);
+        for (int i = 0; i < length; i++) {
+          this.index.putChar(at + S_NAME + i * 2, this.log.getChar(recordAt + R_NAME + i * 2));
+        }
+        this.index.putInt(at + S_COUNT, 0);
+        return slot;
+      }
+      if (slotLength == length && sameName(at, recordAt, length)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Determines if the name in the player slot at the given offset is the name of the record at the given offset.
+   */
+  private boolean sameName(int slotAt, int recordAt, int length) {
+    for (int i = 0; i < length; i++) {
+      if (this.index.getChar(slotAt + S_NAME + i * 2) != this.log.getChar(recordAt + R_NAME + i * 2)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Clears the index and adds every record of the log to it again.
+   */
+  private void rebuildIndex() {
+    for (int i = 0; i < INDEX_SIZE; i++) {
+      this.index.put(i, (byte) 0);
+    }
+    this.index.putInt(0, INDEX_MAGIC);
+    this.index.putInt(4, VERSION);
+    for (int record = 0; record < this.count; record++) {
+      indexRecord(record);
+    }
+    this.index.putLong(I_COUNT, this.count);
+  }
+
+  //QUERIES------------------------------------
+
+  /**
+   * Returns the number of results in this store.
+   * @return the number of results
+   */
+  public synchronized int size() {
+    return this.count;
+  }
+
+  /**
+   * Returns the result with the given record number.
+   * @param record the record number (0 for the first result ever appended)
+   * @return the result with the given record number
+   */
+  public synchronized RoundResult get(int record) {
+    if (record < 0 || record >= this.count) {
+      throw new IndexOutOfBoundsException("record: " + record + ", size: " + this.count);
+    }
+    int at = recordOffset(record);
+    int length = this.log.get(at + R_NAME_LENGTH);
+    char[] name = new char[length];
+    for (int i = 0; i < length; i++) {
+      name[i] = this.log.getChar(at + R_NAME + i * 2);
+    }
+    return new RoundResult(new String(name), this.log.getInt(at + R_SCORE), this.log.getLong(at + R_TIMESTAMP),
+        this.log.getInt(at + R_DURATION), GameMode.values()[this.log.get(at + R_MODE)]);
+  }
+
+  /**
+   * Returns the all-time top results (highest score first).
+   * @param n the number of results to return (at most TOP_N)
+   * @return the top results
+   */
+  public synchronized List<RoundResult> topScores(int n) {
+    return readTop(TOP_OFFSET, Math.min(n, this.index.getInt(I_TOP_COUNT)));
+  }
+
+  /**
+   * Returns the top results of the player with the given name (highest score first).
+   * @param name the name of the player
+   * @param n the number of results to return (at most PLAYER_TOP_N)
+   * @return the top results of the player (empty if the player has no results)
+   */
+  public synchronized List<RoundResult> topScores(String name, int n) {
+    int slot = findSlot(name);
+    if (slot < 0) {
+      return new ArrayList<RoundResult>();
+    }
+    int at = PLAYERS_OFFSET + slot * SLOT_SIZE;
+    return readTop(at + S_TOP, Math.min(n, this.index.getInt(at + S_COUNT)));
+  }
+
+  /**
+   * Returns the all-time rank that the given score has (or would have) among all results:
+   * 1 + the number of results with a higher score.
+   * @param score the score to rank
+   * @return the rank of the score (1 for the best)
+   */
+  public synchronized int rankOf(int score) {
+    int atOrBelow = 0;
+    for (int i = clampScore(score) + 1; i > 0; i -= i & -i) {
+      atOrBelow += this.index.getInt(FENWICK_OFFSET + i * 4);
+    }
+    return this.count - atOrBelow + 1;
+  }
+
+  /**
+   * Reads the given number of entries of the sorted list at the given offset of the index.
+   */
+  private List<RoundResult> readTop(int offset, int n) {
+    List<RoundResult> results = new ArrayList<RoundResult>(Math.max(0, n));
+    for (int i = 0; i < n; i++) {
+      results.add(get(this.index.getInt(offset + i * ENTRY_SIZE + 4)));
+    }
+    return results;
+  }
+
+  /**
+   * Finds the slot of the player table that holds the given name.
+   * @return the slot of the name, -1 if it isn't in the table
+   */
+  private int findSlot(String name) {
+    int length = Math.min(NAME_CHARS, name.length());
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + name.charAt(i);
+    }
+    hash ^= hash >>> 16;
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      int slot = (hash + probe) & (PLAYER_SLOTS - 1);
+      int at = PLAYERS_OFFSET + slot * SLOT_SIZE;
+      int slotLength = this.index.getInt(at + S_NAME_LENGTH) - 1;
+      if (slotLength < 0) {
+        return -1;
+      }
+      if (slotLength == length) {
+        boolean same = true;
+        for (int i = 0; i < length && same; i++) {
+          same = this.index.getChar(at + S_NAME + i * 2) == name.charAt(i);
+        }
+        if (same) {
+          return slot;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the offset of the record with the given number in the log.
+   */
+  private static int recordOffset(int record) {
+    return HEADER_SIZE + record * RECORD_SIZE;
+  }
+
+  /**
+   * Returns the given score, limited to the range of scores that are ranked.
+   */
+  private static int clampScore(int score) {
+    return Math.max(0, Math.min(MAX_RANKED_SCORE, score));
+  }
+
+  //CLOSE------------------------------------
+
+  /**
+   * Writes all changes to disk.
+   */
+  public synchronized void force() {
+    this.log.force();
+    this.index.force();
+  }
+
+  /**
+   * Writes all changes to disk and closes the files of this store.
+   * @throws IOException if the files can't be closed
+   */
+  public synchronized void close() throws IOException {
+    if (this.index != null) {
+      force();
+    }
+    this.logChannel.close();
+    this.indexChannel.close();
+  }
+}
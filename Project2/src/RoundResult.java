@@ -0,0 +1,73 @@
+/**
+ * This class represents the result of one completed round: the player's name, their score, 
+ * the time at which the round was played, how long the round lasted, and the play mode of the game.
+ * @author stefanieim
+ */
+public class RoundResult {
+  private final String name;
+  private final int score;
+  private final long timestamp; //in milliseconds since the epoch
+  private final int durationMillis;
+  private final GameMode mode;
+
+  /**
+   * Creates a new round result.
+   * @param name the name of the player
+   * @param score the score of the player in this round
+   * @param timestamp the time at which the round was played (in milliseconds since the epoch)
+   * @param durationMillis the length of the round, in milliseconds
+   * @param mode the play mode of the game
+   */
+  public RoundResult(String name, int score, long timestamp, int durationMillis, GameMode mode) {
+    this.name = name;
+    this.score = score;
+    this.timestamp = timestamp;
+    this.durationMillis = durationMillis;
+    this.mode = mode;
+  }
+
+  /**
+   * Returns the name of the player.
+   * @return the name of the player
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Returns the score of the player in this round.
+   * @return the score of the player
+   */
+  public int getScore() {
+    return this.score;
+  }
+
+  /**
+   * Returns the time at which the round was played.
+   * @return the time of the round, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return this.timestamp;
+  }
+
+  /**
+   * Returns the length of the round.
+   * @return the length of the round, in milliseconds
+   */
+  public int getDurationMillis() {
+    return this.durationMillis;
+  }
+
+  /**
+   * Returns the play mode of the game.
+   * @return the play mode of the game
+   */
+  public GameMode getMode() {
+    return this.mode;
+  }
+
+  @Override
+  public String toString() {
+    return this.name + ": " + this.score + " (" + this.mode + ", " + this.durationMillis + " ms, at " + this.timestamp + ")";
+  }
+}
@@ -0,0 +1,65 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The retained scene graph of the user interface: the clickable nodes of each game state, 
+ * and of the pop-up overlay (e.g. the reset message), each registered once in a hit-test grid.
+ * While the overlay is showing, it is modal: only its nodes can be clicked.
+ * @author stefanieim
+ */
+public class SceneGraph {
+  private final Map<GameState, HitGrid> states; //the nodes of each game state
+  private final HitGrid overlay; //the nodes of the pop-up overlay
+
+  /**
+   * Creates a new empty scene graph over an area of the given size.
+   * @param width the width of the area (e.g. the canvas)
+   * @param height the height of the area
+   */
+  public SceneGraph(int width, int height) {
+    this.states = new EnumMap<GameState, HitGrid>(GameState.class);
+    for (GameState state : GameState.values()) {
+      this.states.put(state, new HitGrid(width, height));
+    }
+    this.overlay = new HitGrid(width, height);
+  }
+
+  /**
+   * Adds the given node to the given game state (on top of the nodes already added to it).
+   * @param state the game state the node belongs to
+   * @param node the node to add
+   */
+  public void add(GameState state, UiNode node) {
+    this.states.get(state).add(node);
+  }
+
+  /**
+   * Adds the given node to every game state.
+   * @param node the node to add
+   */
+  public void addToAllStates(UiNode node) {
+    for (HitGrid grid : this.states.values()) {
+      grid.add(node);
+    }
+  }
+
+  /**
+   * Adds the given node to the pop-up overlay.
+   * @param node the node to add
+   */
+  public void addToOverlay(UiNode node) {
+    this.overlay.add(node);
+  }
+
+  /**
+   * Returns the topmost enabled node at the given point.
+   * @param state the current game state
+   * @param overlayShowing true if the pop-up overlay is showing (then only its nodes are considered)
+   * @param px the x position of the point
+   * @param py the y position of the point
+   * @return the node at the point, or null if there is none
+   */
+  public UiNode nodeAt(GameState state, boolean overlayShowing, int px, int py) {
+    return (overlayShowing ? this.overlay : this.states.get(state)).nodeAt(px, py);
+  }
+}
@@ -0,0 +1,221 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * This class records every input that drives a game session into a compact binary file, so that the session 
+ * can be replayed exactly (see SessionReplayer), e.g. to reproduce a performance problem from a real session.
+ * It records:
+ * - the seed of the random numbers used for the circles (in the header),
+ * - every frame (with the mouse position, for hover effects),
+ * - every mouse click and typed key (with the mouse position, which selects the name box),
+ * - every key press and release handled from the input buffer (with the time it arrived), and
+ * - every time read by the game engine's clock (e.g. by the players' timers).
+ * 
+ * The file starts with a header (MAGIC, VERSION, the seed and the time at which the recording started), 
+ * followed by one record per input: a type byte, then its values as variable-length integers. 
+ * Times are stored as the (zigzag encoded) difference from the previous time in the file, 
+ * so most records only take 2 to 5 bytes.
+ * All inputs must be recorded on the same thread (the sketch's animation thread), in the order they happen.
+ * @author stefanieim
+ */
+public class SessionRecorder implements Closeable {
+  public final static int MAGIC = 0x53435231; //"SCR1"
+  public final static int VERSION = 2; //2: the clock is read once per tick of the game logic, not by each scoreboard
+  public final static int BUFFER_SIZE = 1 << 16;
+
+  //record types
+  final static int FRAME = 1; //mouseX, mouseY
+  final static int TIME = 2; //time delta
+  final static int KEY = 3; //type, key, keyCode, time delta
+  final static int TYPED = 4; //key, keyCode, mouseX, mouseY
+  final static int CLICK = 5; //mouseX, mouseY
+
+  private final DataOutputStream out;
+  private final long seed;
+  private final Thread owner; //the thread that records (clock reads from other threads aren't recorded)
+  private long lastTime; //the last time written, that the next time is stored relative to
+  private long records;
+
+  /**
+   * Creates a new recorder that writes to the file at the given path (replacing it), and writes the header.
+   * The recorder belongs to the thread that creates it.
+   * @param path the path of the file to record into
+   * @param seed the seed of the random numbers of the session
+   * @param startNanos the time at which the recording starts (that the first recorded time is stored relative to)
+   * @throws IOException if the file couldn't be created
+   */
+  public SessionRecorder(String path, long seed, long startNanos) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), BUFFER_SIZE));
+    this.seed = seed;
+    this.owner = Thread.currentThread();
+    this.lastTime = startNanos;
+    this.records = 0;
+    this.out.writeInt(MAGIC);
+    this.out.writeByte(VERSION);
+    this.out.writeLong(seed);
+    this.out.writeLong(startNanos);
+  }
+
+  /**
+   * Returns a time source that reads the given time source, and records every time it reads on this recorder's thread.
+   * Reads on other threads (e.g. to timestamp key events as they arrive) aren't recorded, 
+   * since those times are recorded with the key events themselves.
+   * @param source the time source to read
+   * @return the recording time source
+   */
+  public TimeSource record(TimeSource source) {
+    return () -> {
+      long nanos = source.nanoTime();
+      if (Thread.currentThread() == this.owner) {
+        time(nanos);
+      }
+      return nanos;
+    };
+  }
+
+  /**
+   * Records the start of a frame.
+   * @param mouseX the x position of the mouse during the frame
+   * @param mouseY the y position of the mouse during the frame
+   */
+  public void frame(int mouseX, int mouseY) {
+    try {
+      this.out.writeByte(FRAME);
+      writeVarLong(zigzag(mouseX));
+      writeVarLong(zigzag(mouseY));
+      this.records++;
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Records a time read by the game's clock.
+   * @param nanos the time, in nanoseconds
+   */
+  public void time(long nanos) {
+    try {
+      this.out.writeByte(TIME);
+      writeTime(nanos);
+      this.records++;
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Records a key event handled from the input buffer.
+   * @param type the type of the event (InputRingBuffer.KEY_DOWN or KEY_UP)
+   * @param key the character of the key
+   * @param keyCode the code of the key
+   * @param nanos the time at which the event arrived
+   */
+  public void key(int type, char key, int keyCode, long nanos) {
+    try {
+      this.out.writeByte(KEY);
+      this.out.writeByte(type);
+      writeVarLong(key);
+      writeVarLong(keyCode);
+      writeTime(nanos);
+      this.records++;
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Records a typed key (handled by keyPressed).
+   * @param key the character of the key
+   * @param keyCode the code of the key
+   * @param mouseX the x position of the mouse
+   * @param mouseY the y position of the mouse
+   */
+  public void typed(char key, int keyCode, int mouseX, int mouseY) {
+    try {
+      this.out.writeByte(TYPED);
+      writeVarLong(key);
+      writeVarLong(keyCode);
+      writeVarLong(zigzag(mouseX));
+      writeVarLong(zigzag(mouseY));
+      this.records++;
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Records a mouse click.
+   * @param mouseX the x position of the mouse
+   * @param mouseY the y position of the mouse
+   */
+  public void click(int mouseX, int mouseY) {
+    try {
+      this.out.writeByte(CLICK);
+      writeVarLong(zigzag(mouseX));
+      writeVarLong(zigzag(mouseY));
+      this.records++;
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Writes the given time, relative to the last time written.
+   */
+  private void writeTime(long nanos) throws IOException {
+    writeVarLong(zigzag(nanos - this.lastTime));
+    this.lastTime = nanos;
+  }
+
+  /**
+   * Writes the given value as a variable-length integer (7 bits per byte, the lowest bits first).
+   */
+  private void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      this.out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    this.out.writeByte((int) value);
+  }
+
+  /**
+   * Maps a signed value onto an unsigned value, so that small negative values are also small (0, -1, 1, -2, ...).
+   */
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Reports that recording failed (the game itself goes on).
+   */
+  private void failed(IOException e) {
+    System.err.println("Could not record the session: " + e.getMessage());
+  }
+
+  /**
+   * Returns the seed of the random numbers of the recorded session.
+   * @return the seed
+   */
+  public long getSeed() {
+    return this.seed;
+  }
+
+  /**
+   * Returns the number of records written so far.
+   * @return the number of records
+   */
+  public long getRecords() {
+    return this.records;
+  }
+
+  /**
+   * Writes any buffered records to the file, and closes it.
+   */
+  @Override
+  public void close() throws IOException {
+    this.out.close();
+  }
+}
@@ -0,0 +1,295 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import processing.awt.PGraphicsJava2D;
+
+/**
+ * This class replays a session recorded by SessionRecorder, headlessly (onto an offscreen graphics, without a window).
+ * The sketch gets exactly the same inputs as in the recorded session: the same frames, mouse clicks and keys, 
+ * the same random numbers, and the same times from the engine's clock (this replayer is the clock), 
+ * so every frame is drawn exactly as it was in the session. 
+ * The replay runs as fast as possible (or at a given multiple of the recorded speed), and it reports 
+ * the time taken to draw the frames, so that sessions can be used to reproduce and benchmark slow frames.
+ * 
+ * To replay a session (from the Project2 folder, after compiling into out):
+ *   java -Djava.awt.headless=true -cp out:core.jar SessionReplayer session.scr [speed] [framesDir]
+ * where speed is the multiple of the recorded speed (0, the default, for as fast as possible), and 
+ * if a directory is given, every frame is saved into it as a png image.
+ * @author stefanieim
+ */
+public class SessionReplayer implements TimeSource, Closeable {
+  /**
+   * Is notified after each replayed frame.
+   */
+  public interface FrameListener {
+    /**
+     * Called after the given frame has been drawn.
+     * @param frame the number of the frame (starting at 0)
+     * @param graphics the graphics the frame was drawn onto
+     */
+    void onFrame(int frame, PGraphicsJava2D graphics);
+  }
+
+  private final DataInputStream in;
+  private final long seed;
+  private final long startNanos; //the time at which the recording started
+  private long lastTime; //the last time read, that the next time is relative to
+  private int next; //the type of the next record (-1 at the end of the file)
+  private final LatencyHistogram drawTimes; //the time taken by each draw() of the replay
+  private int frames;
+  private long records;
+
+  /**
+   * Opens the recorded session at the given path, and reads its header.
+   * @param path the path of the recorded session
+   * @throws IOException if the file couldn't be read, or isn't a recorded session
+   */
+  public SessionReplayer(String path) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), SessionRecorder.BUFFER_SIZE));
+    if (this.in.readInt() != SessionRecorder.MAGIC) {
+      throw new IOException(path + " is not a recorded session");
+    }
+    int version = this.in.readUnsignedByte();
+    if (version != SessionRecorder.VERSION) {
+      throw new IOException("unsupported recording version: " + version);
+    }
+    this.seed = this.in.readLong();
+    this.startNanos = this.in.readLong();
+    this.lastTime = this.startNanos;
+    this.drawTimes = new LatencyHistogram();
+    readType();
+  }
+
+  /**
+   * Returns the next recorded time read by the engine's clock.
+   * @return the recorded time, in nanoseconds
+   * @throws IllegalStateException if the replay no longer matches the recording (the next record isn't a time)
+   */
+  @Override
+  public long nanoTime() {
+    if (this.next != SessionRecorder.TIME) {
+      throw new IllegalStateException("the replay is out of sync with the recording (record " + this.records + ")");
+    }
+    try {
+      long nanos = readTime();
+      readType();
+      return nanos;
+    } catch (IOException e) {
+      throw new IllegalStateException("could not read the recording", e);
+    }
+  }
+
+  /**
+   * Replays the whole session onto the given renderer's sketch, which must be new (setup is called by this method).
+   * @param renderer the renderer of the sketch to replay the session on
+   * @param speed the multiple of the recorded speed to replay at (0 for as fast as possible)
+   * @param listener notified after each frame (or null)
+   * @throws IOException if the recording couldn't be read
+   */
+  public void replay(OffscreenRenderer renderer, double speed, FrameListener listener) throws IOException {
+    Processing sketch = renderer.getSketch();
+    sketch.replay(new GameEngine(this), this.seed);
+    renderer.setup();
+    long wallStart = System.nanoTime();
+    while (this.next != -1) {
+      switch (this.next) {
+        case SessionRecorder.FRAME:
+          sketch.mouseX = readInt();
+          sketch.mouseY = readInt();
+          readType();
+          readKeys(sketch);
+          if (speed > 0) { //wait until the frame's time (relative to the start of the recording) at the given speed
+            long wait = (long) ((this.lastTime - this.startNanos) / speed) - (System.nanoTime() - wallStart);
+            if (wait > 0) {
+              try {
+                Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+              }
+            }
+          }
+          this.drawTimes.record(renderer.renderFrame());
+          if (listener != null) {
+            listener.onFrame(this.frames, renderer.getGraphics());
+          }
+          this.frames++;
+          break;
+        case SessionRecorder.CLICK:
+          sketch.mouseX = readInt();
+          sketch.mouseY = readInt();
+          readType();
+          readKeys(sketch);
+          sketch.mouseClicked();
+          break;
+        case SessionRecorder.TYPED:
+          sketch.key = (char) readVarLong();
+          sketch.keyCode = (int) readVarLong();
+          sketch.mouseX = readInt();
+          sketch.mouseY = readInt();
+          readType();
+          sketch.keyPressed();
+          break;
+        case SessionRecorder.KEY:
+          readKeys(sketch);
+          break;
+        default: //a time that wasn't read by the replay
+          throw new IllegalStateException("the replay is out of sync with the recording (record " + this.records + ")");
+      }
+    }
+  }
+
+  /**
+   * Adds all consecutive key records to the sketch's input buffer (they were handled at the start of the frame or click
+   * that they follow, so they are handled at the same point of the replay).
+   */
+  private void readKeys(Processing sketch) throws IOException {
+    while (this.next == SessionRecorder.KEY) {
+      int type = this.in.readUnsignedByte();
+      char key = (char) readVarLong();
+      int keyCode = (int) readVarLong();
+      long nanos = readTime();
+      readType();
+      sketch.replayInput(type, key, keyCode, nanos);
+    }
+  }
+
+  /**
+   * Reads the type of the next record (-1 at the end of the file).
+   */
+  private void readType() throws IOException {
+    this.next = this.in.read();
+    if (this.next != -1) {
+      this.records++;
+    }
+  }
+
+  /**
+   * Reads a time, relative to the last time read.
+   */
+  private long readTime() throws IOException {
+    this.lastTime += unzigzag(readVarLong());
+    return this.lastTime;
+  }
+
+  /**
+   * Reads a signed (zigzag encoded) int.
+   */
+  private int readInt() throws IOException {
+    return (int) unzigzag(readVarLong());
+  }
+
+  /**
+   * Reads a variable-length integer (7 bits per byte, the lowest bits first).
+   */
+  private long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = this.in.read();
+      if (b == -1) {
+        throw new EOFException("the recording ends in the middle of a record");
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed variable-length integer");
+  }
+
+  /**
+   * Maps an unsigned (zigzag encoded) value back onto the signed value.
+   */
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Returns the seed of the random numbers of the recorded session.
+   * @return the seed
+   */
+  public long getSeed() {
+    return this.seed;
+  }
+
+  /**
+   * Returns the length of the replayed part of the session (from the start of the recording to the last time read).
+   * @return the length of the session, in nanoseconds
+   */
+  public long getReplayedNanos() {
+    return this.lastTime - this.startNanos;
+  }
+
+  /**
+   * Returns the number of frames replayed so far.
+   * @return the number of frames
+   */
+  public int getFrames() {
+    return this.frames;
+  }
+
+  /**
+   * Returns the number of records read so far.
+   * @return the number of records
+   */
+  public long getRecords() {
+    return this.records;
+  }
+
+  /**
+   * Returns the time taken by each draw() of the replay.
+   * @return the histogram of the draw times, in nanoseconds
+   */
+  public LatencyHistogram getDrawTimes() {
+    return this.drawTimes;
+  }
+
+  /**
+   * Closes the recording.
+   */
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+  /**
+   * Replays the given recorded session headlessly, and reports how long it took and how long the frames took to draw.
+   * @param args the path of the recorded session, the speed (optional) and the directory to save the frames into (optional)
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: SessionReplayer session.scr [speed] [framesDir]");
+      return;
+    }
+    System.setProperty("java.awt.headless", "true");
+    double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+    File framesDir = args.length > 2 ? new File(args[2]) : null;
+    if (framesDir != null) {
+      framesDir.mkdirs();
+    }
+
+    OffscreenRenderer renderer = new OffscreenRenderer(new Processing());
+    try (SessionReplayer replayer = new SessionReplayer(args[0])) {
+      long start = System.nanoTime();
+      replayer.replay(renderer, speed, framesDir == null ? null 
+          : (frame, g) -> g.save(new File(framesDir, String.format("frame-%06d.png", frame)).getPath()));
+      long wall = System.nanoTime() - start;
+      LatencyHistogram draws = replayer.getDrawTimes();
+      System.out.printf("replayed %d frames (%d records) of a %.1f s session in %.2f s (%.1fx)%n", replayer.getFrames(), 
+          replayer.getRecords(), replayer.getReplayedNanos() / 1e9, wall / 1e9, replayer.getReplayedNanos() / (double) wall);
+      System.out.printf("draw (us): p50 %.1f  p99 %.1f  max %.1f  mean %.1f%n", draws.getPercentile(50) / 1e3, 
+          draws.getPercentile(99) / 1e3, draws.getMax() / 1e3, draws.getMean() / 1e3);
+      GameModel model = renderer.getSketch().model;
+      StringBuilder scores = new StringBuilder();
+      for (Player player : model.getPlayersList()) {
+        scores.append(' ').append(player.getName()).append('=').append(player.getScore());
+      }
+      System.out.println("final state: " + model.getGameState() + scores);
+    }
+  }
+}
@@ -0,0 +1,399 @@
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PFont;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * This class keeps everything that is needed to draw text quickly onto a sketch:
+ * - a font for each text size of the game, created once (instead of resizing one font at every textSize call),
+ * - a label cache, with the rendered image of each string that doesn't change (e.g. "SpaceChallenge", "points"
+ *   or a player's name), so that it is laid out once and then just drawn as an image, and
+ * - a digit atlas for each text size and color, with the glyphs of "0123456789.-" rendered side by side,
+ *   so that numbers that change at every frame (scores, countdowns) are drawn glyph by glyph without any layout, and
+ * - likewise a text atlas, with the glyphs of the printable ASCII characters, for text that changes as it is typed
+ *   (e.g. a name box), which is drawn from a char buffer without creating a String.
+ * Text drawn through this cache is aligned like the sketch's text (textAlign).
+ * @author stefanieim
+ */
+public class TextCache {
+  public final static String FONT_NAME = "Lucida Sans"; //the font of the game (Processing's default font)
+  public final static int MAX_LABELS = 256; //the label cache is emptied when it has more labels than this
+  private final static String DIGITS = "0123456789.-"; //the glyphs of the digit atlas
+  private final static String TEXT = printableAscii(); //the glyphs of the text atlas
+  private final static int PAD = 2; //pixels around the text of a label or a glyph (for anti-aliasing)
+
+  private final float[] sizes; //the text sizes that have a font
+  private final PFont[] fonts; //the font of each text size
+  private final float[] ascents, descents, leadings; //the ascent, descent and line height of each font (for the alignment)
+  private final int[] baselines; //the row of the (first) baseline in the images of each font
+
+  private final Map<String, List<Label>> labels; //the rendered labels of each string (one per size, color and alignment)
+  private int labelCount;
+  private final List<GlyphAtlas> atlases; //the digit and text atlases of each size and color
+  private final char[] digitBuffer = new char[24]; //the characters of the number being drawn
+
+  /**
+   * A rendered string: its image, with the baseline of its first line at the baseline row of its font
+   * (the text is drawn on whole pixels, like text drawn straight onto the sketch).
+   */
+  private static class Label {
+    private final float size;
+    private final int color;
+    private final int alignX; //the horizontal alignment of the lines (only matters if there are several lines)
+    private final PImage image;
+    private final float width; //width of the text (without the padding)
+    private final int lines; //number of lines of the text
+
+    private Label(float size, int color, int alignX, PImage image, float width, int lines) {
+      this.size = size;
+      this.color = color;
+      this.alignX = alignX;
+      this.image = image;
+      this.width = width;
+      this.lines = lines;
+    }
+  }
+
+  /**
+   * A set of glyphs (DIGITS or TEXT) in one size and color, rendered side by side in cells of the same width.
+   */
+  private static class GlyphAtlas {
+    private final String glyphs;
+    private final float size;
+    private final int color;
+    private final PImage image;
+    private final int cellWidth;
+    private final float[] advances; //the width of each glyph
+
+    private GlyphAtlas(String glyphs, float size, int color, PImage image, int cellWidth, float[] advances) {
+      this.glyphs = glyphs;
+      this.size = size;
+      this.color = color;
+      this.image = image;
+      this.cellWidth = cellWidth;
+      this.advances = advances;
+    }
+  }
+
+  /**
+   * Creates the fonts of the given text sizes for the given sketch (this is done once, at startup).
+   * @param sketch the sketch to create the fonts for
+   * @param sizes the text sizes used by the sketch
+   */
+  public TextCache(PApplet sketch, float... sizes) {
+    this.sizes = sizes.clone();
+    this.fonts = new PFont[sizes.length];
+    this.ascents = new float[sizes.length];
+    this.descents = new float[sizes.length];
+    this.leadings = new float[sizes.length];
+    this.baselines = new int[sizes.length];
+    Font base = new Font(FONT_NAME, Font.PLAIN, 1);
+    for (int i = 0; i < sizes.length; i++) {
+      //made like Processing's default font (the font falls back onto a logical font if it isn't installed)
+      this.fonts[i] = new PFont(base.deriveFont(sizes[i] * sketch.pixelDensity), true, null, false, sketch.pixelDensity);
+      sketch.textFont(this.fonts[i]);
+      this.ascents[i] = sketch.textAscent();
+      this.descents[i] = sketch.textDescent();
+      this.leadings[i] = sketch.g.textLeading;
+      this.baselines[i] = PAD + (int) Math.ceil(this.ascents[i]);
+    }
+    this.labels = new HashMap<String, List<Label>>();
+    this.atlases = new ArrayList<GlyphAtlas>();
+  }
+
+  /**
+   * Returns the font of the given text size.
+   * @param size the text size
+   * @return the font of the text size, or null if the size doesn't have a font
+   */
+  public PFont getFont(float size) {
+    int i = indexOf(size);
+    return i < 0 ? null : this.fonts[i];
+  }
+
+  /**
+   * Draws a string that doesn't change (often) onto the sketch, as it would be drawn by the sketch's text(),
+   * with the given alignment. The string is rendered once (for each size and color) and then drawn as an image.
+   * @param sketch the sketch to draw onto
+   * @param text the string to draw (lines are separated by '\n')
+   * @param size the text size, which must have a font
+   * @param color the color of the text (packed ARGB)
+   * @param alignX the horizontal alignment (LEFT, CENTER or RIGHT)
+   * @param alignY the vertical alignment (TOP, CENTER, BOTTOM or BASELINE)
+   * @param x the x position of the text
+   * @param y the y position of the text
+   */
+  public void drawLabel(PApplet sketch, String text, float size, int color, int alignX, int alignY, float x, float y) {
+    Label label = getLabel(sketch, text, size, color, alignX);
+    int i = indexOf(size);
+    float baseline = alignY(alignY, y, i); //of the first line, moved up for the lines below it
+    if (alignY == PConstants.CENTER) {
+      baseline -= (label.lines - 1) * this.leadings[i] / 2;
+    }
+    else if (alignY == PConstants.BOTTOM) {
+      baseline -= (label.lines - 1) * this.leadings[i];
+    }
+    sketch.image(label.image, Math.round(alignX(alignX, x, label.width)) - PAD, Math.round(baseline) - this.baselines[i]);
+  }
+
+  /**
+   * Draws a number onto the sketch glyph by glyph (from the digit atlas of its size and color), as the sketch's
+   * text() would draw it, with the given alignment. Nothing is laid out or allocated, once the atlas exists.
+   * @param sketch the sketch to draw onto
+   * @param value the number to draw, as a fixed-point number with the given number of decimals (e.g. 123 with
+   *        1 decimal is drawn as "12.3")
+   * @param decimals the number of decimals of the value (0 for an integer)
+   * @param size the text size, which must have a font
+   * @param color the color of the text (packed ARGB)
+   * @param alignX the horizontal alignment (LEFT, CENTER or RIGHT)
+   * @param alignY the vertical alignment (TOP, CENTER, BOTTOM or BASELINE)
+   * @param x the x position of the text
+   * @param y the y position of the text
+   */
+  public void drawNumber(PApplet sketch, int value, int decimals, float size, int color, int alignX, int alignY,
+      float x, float y) {
+    GlyphAtlas atlas = getAtlas(sketch, DIGITS, size, color);
+    //the characters of the number, from the end of the buffer
+    int start = this.digitBuffer.length;
+    long rest = Math.abs((long) value);
+    for (int d = 0; d <= decimals || rest > 0; d++) {
+      if (d == decimals && decimals > 0) {
+        this.digitBuffer[--start] = '.';
+      }
+      this.digitBuffer[--start] = (char) ('0' + rest % 10);
+      rest /= 10;
+    }
+    if (value < 0) {
+      this.digitBuffer[--start] = '-';
+    }
+    drawGlyphs(sketch, atlas, this.digitBuffer, start, this.digitBuffer.length, alignX, alignY, x, y);
+  }
+
+  /**
+   * Draws the first characters of a char buffer onto the sketch glyph by glyph (from the text atlas of its size and
+   * color), as the sketch's text() would draw them, with the given alignment: e.g. the text of a TextField, as it is
+   * typed. Nothing is laid out or allocated, once the atlas exists. Characters that aren't printable ASCII are skipped.
+   * @param sketch the sketch to draw onto
+   * @param chars the buffer of the characters to draw
+   * @param count the number of characters to draw (from the start of the buffer)
+   * @param size the text size, which must have a font
+   * @param color the color of the text (packed ARGB)
+   * @param alignX the horizontal alignment (LEFT, CENTER or RIGHT)
+   * @param alignY the vertical alignment (TOP, CENTER, BOTTOM or BASELINE)
+   * @param x the x position of the text
+   * @param y the y position of the text
+   * @return the x position of the left side of the drawn text
+   */
+  public float drawChars(PApplet sketch, char[] chars, int count, float size, int color, int alignX, int alignY,
+      float x, float y) {
+    return drawGlyphs(sketch, getAtlas(sketch, TEXT, size, color), chars, 0, count, alignX, alignY, x, y);
+  }
+
+  /**
+   * Returns the width of the first characters of a char buffer, as drawn by drawChars (e.g. to find where a caret goes).
+   * @param sketch the sketch that the characters are drawn onto
+   * @param chars the buffer of the characters
+   * @param count the number of characters (from the start of the buffer)
+   * @param size the text size, which must have a font
+   * @param color the color of the text (packed ARGB)
+   * @return the width of the characters
+   */
+  public float charsWidth(PApplet sketch, char[] chars, int count, float size, int color) {
+    return width(getAtlas(sketch, TEXT, size, color), chars, 0, count);
+  }
+
+  /**
+   * Returns the number of labels in the label cache.
+   * @return the number of labels
+   */
+  public int getLabelCount() {
+    return this.labelCount;
+  }
+
+  /**
+   * Returns the label of the given string, size, color and alignment, rendering it first if it is not in the cache yet.
+   */
+  private Label getLabel(PApplet sketch, String text, float size, int color, int alignX) {
+    List<Label> rendered = this.labels.get(text);
+    if (rendered != null) {
+      for (int i = 0; i < rendered.size(); i++) {
+        Label label = rendered.get(i);
+        if (label.size == size && label.color == color && label.alignX == alignX) {
+          return label;
+        }
+      }
+    }
+    if (this.labelCount >= MAX_LABELS) { //e.g. the names of many tournament entrants
+      this.labels.clear();
+      this.labelCount = 0;
+      rendered = null;
+    }
+    if (rendered == null) {
+      rendered = new ArrayList<Label>(1);
+      this.labels.put(text, rendered);
+    }
+    int i = indexOf(size);
+    PFont font = this.fonts[i];
+    sketch.textFont(font);
+    float width = sketch.textWidth(text); //of the longest line
+    int lines = 1;
+    for (int c = text.indexOf('\n'); c >= 0; c = text.indexOf('\n', c + 1)) {
+      lines++;
+    }
+    PGraphics pg = sketch.createGraphics((int) Math.ceil(width) + PAD*2,
+        this.baselines[i] + (int) Math.ceil(this.descents[i] + (lines - 1) * this.leadings[i]) + PAD);
+    pg.beginDraw();
+    pg.textFont(font);
+    pg.textLeading(this.leadings[i]);
+    pg.fill(color);
+    //the lines are aligned like they would be on the sketch, so the anchor is at the left, center or right of the text
+    if (alignX == PConstants.CENTER) {
+      pg.textAlign(PConstants.CENTER, PConstants.BASELINE);
+      pg.text(text, PAD + width / 2, this.baselines[i]);
+    }
+    else if (alignX == PConstants.RIGHT) {
+      pg.textAlign(PConstants.RIGHT, PConstants.BASELINE);
+      pg.text(text, PAD + width, this.baselines[i]);
+    }
+    else {
+      pg.textAlign(PConstants.LEFT, PConstants.BASELINE);
+      pg.text(text, PAD, this.baselines[i]);
+    }
+    pg.endDraw();
+    Label label = new Label(size, color, alignX, pg, width, lines);
+    rendered.add(label);
+    this.labelCount++;
+    return label;
+  }
+
+  /**
+   * Draws the characters of a buffer (from start to end) glyph by glyph from the given atlas, with the given alignment.
+   * @return the x position of the left side of the drawn characters
+   */
+  private float drawGlyphs(PApplet sketch, GlyphAtlas atlas, char[] chars, int start, int end, int alignX, int alignY,
+      float x, float y) {
+    int i = indexOf(atlas.size);
+    float left = alignX(alignX, x, width(atlas, chars, start, end));
+    float glyphX = left;
+    int glyphY = Math.round(alignY(alignY, y, i)) - this.baselines[i];
+    int height = atlas.image.height;
+    for (int c = start; c < end; c++) {
+      int glyph = atlas.glyphs.indexOf(chars[c]);
+      if (glyph >= 0) {
+        int u = glyph * atlas.cellWidth;
+        sketch.image(atlas.image, Math.round(glyphX) - PAD, glyphY, atlas.cellWidth, height, u, 0, u + atlas.cellWidth, height);
+        glyphX += atlas.advances[glyph];
+      }
+    }
+    return left;
+  }
+
+  /**
+   * Returns the width of the characters of a buffer (from start to end) drawn from the given atlas.
+   */
+  private float width(GlyphAtlas atlas, char[] chars, int start, int end) {
+    float width = 0;
+    for (int c = start; c < end; c++) {
+      int glyph = atlas.glyphs.indexOf(chars[c]);
+      if (glyph >= 0) {
+        width += atlas.advances[glyph];
+      }
+    }
+    return width;
+  }
+
+  /**
+   * Returns the atlas of the given glyphs (DIGITS or TEXT), size and color, rendering it first if it doesn't exist yet.
+   */
+  private GlyphAtlas getAtlas(PApplet sketch, String glyphs, float size, int color) {
+    for (int a = 0; a < this.atlases.size(); a++) {
+      GlyphAtlas atlas = this.atlases.get(a);
+      if (atlas.glyphs == glyphs && atlas.size == size && atlas.color == color) {
+        return atlas;
+      }
+    }
+    int i = indexOf(size);
+    PFont font = this.fonts[i];
+    sketch.textFont(font);
+    float[] advances = new float[glyphs.length()];
+    float widest = 0;
+    for (int g = 0; g < advances.length; g++) {
+      advances[g] = sketch.textWidth(glyphs.charAt(g));
+      widest = Math.max(widest, advances[g]);
+    }
+    int cellWidth = (int) Math.ceil(widest) + PAD*2;
+    PGraphics pg = sketch.createGraphics(cellWidth * advances.length,
+        this.baselines[i] + (int) Math.ceil(this.descents[i]) + PAD);
+    pg.beginDraw();
+    pg.textFont(font);
+    pg.textAlign(PConstants.LEFT, PConstants.BASELINE);
+    pg.fill(color);
+    for (int g = 0; g < advances.length; g++) {
+      pg.text(glyphs.charAt(g), g * cellWidth + PAD, this.baselines[i]);
+    }
+    pg.endDraw();
+    GlyphAtlas atlas = new GlyphAtlas(glyphs, size, color, pg, cellWidth, advances);
+    this.atlases.add(atlas);
+    return atlas;
+  }
+
+  /**
+   * Returns the printable ASCII characters (the glyphs of the text atlas), from FIRST_CHAR to LAST_CHAR of TextField.
+   */
+  private static String printableAscii() {
+    StringBuilder glyphs = new StringBuilder();
+    for (char c = TextField.FIRST_CHAR; c <= TextField.LAST_CHAR; c++) {
+      glyphs.append(c);
+    }
+    return glyphs.toString();
+  }
+
+  /**
+   * Returns the x position of the left side of a text of the given width, with the given horizontal alignment.
+   */
+  private float alignX(int alignX, float x, float width) {
+    if (alignX == PConstants.CENTER) {
+      return x - width / 2;
+    }
+    if (alignX == PConstants.RIGHT) {
+      return x - width;
+    }
+    return x;
+  }
+
+  /**
+   * Returns the y position of the baseline of a line of text in the font with the given index,
+   * with the given vertical alignment (as the sketch's text() aligns it).
+   */
+  private float alignY(int alignY, float y, int font) {
+    if (alignY == PConstants.TOP) {
+      return y + this.ascents[font];
+    }
+    if (alignY == PConstants.CENTER) {
+      return y + this.ascents[font] / 2;
+    }
+    if (alignY == PConstants.BOTTOM) {
+      return y - this.descents[font];
+    }
+    return y;
+  }
+
+  /**
+   * Returns the index of the font of the given text size (-1 if there is none).
+   */
+  private int indexOf(float size) {
+    for (int i = 0; i < this.sizes.length; i++) {
+      if (this.sizes[i] == size) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
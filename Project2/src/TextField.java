@@ -0,0 +1,148 @@
+/**
+ * This class is a single-line text input (e.g. a player's name box), that keeps its text in a char buffer
+ * of a fixed maximum length, created once: typing, deleting and moving the caret never create any objects,
+ * and the text is only turned into a String when it is needed (e.g. when the names are confirmed).
+ *
+ * Only printable ASCII characters can be typed, and characters typed into a full field are ignored.
+ * A field can be emptied (clear) and reused, e.g. by the name boxes of the next game.
+ * @author stefanieim
+ */
+public class TextField {
+  public final static char FIRST_CHAR = ' '; //the first character that can be typed
+  public final static char LAST_CHAR = '~'; //the last character that can be typed
+
+  private final char[] chars; //the text, in the first length characters
+  private int length; //the number of characters of the text
+  private int caret; //the position of the caret (between 0 and length), where the next character is typed
+
+  /**
+   * Creates a new empty text field that holds at most the given number of characters.
+   * @param maxLength the maximum number of characters of the text
+   */
+  public TextField(int maxLength) {
+    if (maxLength < 1) {
+      throw new IllegalArgumentException("the maximum length must be positive");
+    }
+    this.chars = new char[maxLength];
+    this.length = 0;
+    this.caret = 0;
+  }
+
+  /**
+   * Types the given character at the caret, and moves the caret after it.
+   * @param c the character to type
+   * @return true if the character was typed, false if it can't be typed or the field is full
+   */
+  public boolean type(char c) {
+    if (c < FIRST_CHAR || c > LAST_CHAR || this.length == this.chars.length) {
+      return false;
+    }
+    System.arraycopy(this.chars, this.caret, this.chars, this.caret + 1, this.length - this.caret);
+    this.chars[this.caret++] = c;
+    this.length++;
+    return true;
+  }
+
+  /**
+   * Deletes the character before the caret (like the backspace key).
+   * @return true if a character was deleted, false if the caret is at the start
+   */
+  public boolean backspace() {
+    if (this.caret == 0) {
+      return false;
+    }
+    this.caret--;
+    return delete();
+  }
+
+  /**
+   * Deletes the character after the caret (like the delete key).
+   * @return true if a character was deleted, false if the caret is at the end
+   */
+  public boolean delete() {
+    if (this.caret == this.length) {
+      return false;
+    }
+    System.arraycopy(this.chars, this.caret + 1, this.chars, this.caret, this.length - this.caret - 1);
+    this.length--;
+    return true;
+  }
+
+  /**
+   * Moves the caret by the given number of characters (to the left if negative), within the text.
+   * @param by the number of characters to move the caret by
+   * @return true if the caret moved
+   */
+  public boolean moveCaret(int by) {
+    return setCaret(this.caret + by);
+  }
+
+  /**
+   * Moves the caret to the given position (clamped to the text, e.g. Integer.MAX_VALUE for the end).
+   * @param caret the position to move the caret to
+   * @return true if the caret moved
+   */
+  public boolean setCaret(int caret) {
+    caret = Math.max(0, Math.min(this.length, caret));
+    boolean moved = caret != this.caret;
+    this.caret = caret;
+    return moved;
+  }
+
+  /**
+   * Empties this field (so it can be reused).
+   */
+  public void clear() {
+    this.length = 0;
+    this.caret = 0;
+  }
+
+  /**
+   * Determines if nothing has been typed into this field.
+   * @return true if the field is empty
+   */
+  public boolean isEmpty() {
+    return this.length == 0;
+  }
+
+  /**
+   * Returns the number of characters of the text.
+   * @return the length of the text
+   */
+  public int length() {
+    return this.length;
+  }
+
+  /**
+   * Returns the maximum number of characters of the text.
+   * @return the maximum length
+   */
+  public int getMaxLength() {
+    return this.chars.length;
+  }
+
+  /**
+   * Returns the position of the caret (the number of characters before it).
+   * @return the position of the caret
+   */
+  public int getCaret() {
+    return this.caret;
+  }
+
+  /**
+   * Returns the buffer that holds the text, in its first length() characters (e.g. to draw the text without
+   * creating a String). The buffer must not be changed, and its characters change when the field is typed into.
+   * @return the text's buffer
+   */
+  public char[] getChars() {
+    return this.chars;
+  }
+
+  /**
+   * Returns the text of this field, as a new String.
+   * @return the text
+   */
+  public String toString() {
+    return new String(this.chars, 0, this.length);
+  }
+}
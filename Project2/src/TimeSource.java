@@ -0,0 +1,18 @@
+/**
+ * A source of time for the game, so that the game rules do not depend on a Processing window.
+ * The default source uses the system's monotonic clock, but tests and simulations can use their own
+ * source (e.g. a clock that is moved forward by hand).
+ * @author stefanieim
+ */
+public interface TimeSource {
+  /**
+   * The system's monotonic clock.
+   */
+  public final static TimeSource SYSTEM = System::nanoTime;
+
+  /**
+   * Returns the current time in nanoseconds. Only the difference between two values is meaningful.
+   * @return the current time in nanoseconds
+   */
+  long nanoTime();
+}
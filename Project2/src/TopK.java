@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/**
+ * Keeps track of the k entrants with the highest keys among a fixed number of entrants,
+ * where an entrant's key can only increase (e.g. tournament points).
+ * The top k are kept in a min-heap, so updating an entrant's key takes O(log k) time,
+ * and the standings never need to rescan every entrant.
+ * @author stefanieim
+ */
+public class TopK {
+  private final int k;
+  private final long[] keys; //key of each entrant
+  private final int[] heap; //entrant ids, the entrant with the lowest key of the top k at heap[0]
+  private final int[] heapPos; //position of each entrant in the heap, -1 if it is not in the top k
+  private int size; //number of entrants in the heap
+
+  /**
+   * Creates a new top-k structure for the given number of entrants, all with a key of 0.
+   * @param k the number of top entrants to keep track of
+   * @param entrants the number of entrants (with ids 0 to entrants - 1)
+   */
+  public TopK(int k, int entrants) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be positive");
+    }
+    this.k = Math.min(k, entrants);
+    this.keys = new long[entrants];
+    this.heap = new int[this.k];
+    this.heapPos = new int[entrants];
+    Arrays.fill(this.heapPos, -1);
+    //initially, the first k entrants are the top k (all keys are 0, so the highest id ranks lowest)
+    for (int i = 0; i < this.k; i++) {
+      this.heap[i] = this.k - 1 - i;
+      this.heapPos[this.k - 1 - i] = i;
+    }
+    this.size = this.k;
+  }
+
+  /**
+   * Increases the key of the given entrant to the given key (smaller keys are ignored).
+   * @param entrant the id of the entrant
+   * @param key the new key of the entrant
+   */
+  public void increase(int entrant, long key) {
+    if (key <= this.keys[entrant]) {
+      return;
+    }
+    this.keys[entrant] = key;
+    int pos = this.heapPos[entrant];
+    if (pos >= 0) {
+      siftDown(pos); //a larger key moves away from the root of the min-heap
+    }
+    else if (this.size > 0 && before(entrant, this.heap[0])) { //replaces the lowest of the top k
+      this.heapPos[this.heap[0]] = -1;
+      this.heap[0] = entrant;
+      this.heapPos[entrant] = 0;
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Returns the key of the given entrant.
+   * @param entrant the id of the entrant
+   * @return the key of the entrant
+   */
+  public long getKey(int entrant) {
+    return this.keys[entrant];
+  }
+
+  /**
+   * Returns the ids of the top entrants, the highest key first (entrants with the same key by lowest id first).
+   * @param n the number of entrants to return (at most k)
+   * @return the ids of the top n entrants
+   */
+  public int[] top(int n) {
+    Integer[] sorted = new Integer[this.size];
+    for (int i = 0; i < this.size; i++) {
+      sorted[i] = this.heap[i];
+    }
+    Arrays.sort(sorted, (a, b) -> before(a, b) ? -1 : (before(b, a) ? 1 : 0));
+    int[] top = new int[Math.min(n, this.size)];
+    for (int i = 0; i < top.length; i++) {
+      top[i] = sorted[i];
+    }
+    return top;
+  }
+
+  /**
+   * Determines if entrant a ranks before entrant b (higher key, or same key and lower id).
+   */
+  private boolean before(int a, int b) {
+    return this.keys[a] > this.keys[b] || (this.keys[a] == this.keys[b] && a < b);
+  }
+
+  /**
+   * Moves the entrant at the given position of the heap down until the heap order is restored.
+   */
+  private void siftDown(int pos) {
+    int entrant = this.heap[pos];
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= this.size) {
+        break;
+      }
+      if (child + 1 < this.size && before(this.heap[child], this.heap[child + 1])) {
+        child++; //the child that ranks lower
+      }
+      if (!before(entrant, this.heap[child])) {
+        break;
+      }
+      this.heap[pos] = this.heap[child];
+      this.heapPos[this.heap[pos]] = pos;
+      pos = child;
+    }
+    this.heap[pos] = entrant;
+    this.heapPos[entrant] = pos;
+  }
+}
@@ -0,0 +1,282 @@
+import java.util.List;
+
+/**
+ * This class schedules a tournament between any number of entrants (up to many thousands),
+ * as a series of two-player matches that are each played as a normal game (one turn per player).
+ * - ELIMINATION: single-elimination bracket; the higher score of a match advances (on a draw, 
+ *   the entrant with the lower id advances), and an entrant without an opponent gets a bye.
+ * - ROUND_ROBIN: every entrant plays every other entrant once (or only the first rounds, if a maximum 
+ *   number of rounds is given), scheduled with the circle method; a win is worth 2 points and a draw 1.
+ * Entrants are stored compactly in arrays (not as Player objects), matches are generated as they are needed,
+ * and the standings are kept in a TopK structure that is updated with every match result.
+ * @author stefanieim
+ */
+public class Tournament {
+  /**
+   * The different formats of a tournament.
+   */
+  public enum Format {
+    ELIMINATION,
+    ROUND_ROBIN;
+  }
+
+  public final static int STANDINGS_SIZE = 100; //number of top entrants kept in the standings
+
+  private final Format format;
+  private final String[] names;
+  private final int[] totalScores; //sum of the entrant's scores in all of their matches
+  private final int[] points; //ELIMINATION: matches won, ROUND_ROBIN: 2 per win and 1 per draw
+  private final TopK standings;
+
+  //ELIMINATION: the entrants still in the bracket for the current round, and the ones that advanced
+  private int[] bracket;
+  private int bracketSize;
+  private int[] advanced;
+  private int advancedSize;
+  private int nextInBracket; //position in the bracket of the next match
+
+  //ROUND_ROBIN: the circle method pairs the entrants around a circle of an even size
+  private final int circleSize; //number of entrants, +1 if odd (the extra one means a bye)
+  private final int roundCount; //number of rounds to play
+  private int nextMatchInRound;
+
+  private int round; //the current round (zero-based)
+  private int matchesPlayed;
+  private final int[] peek = new int[2]; //the next match, when only checking if there is one
+
+  /**
+   * Creates a new tournament between the entrants with the given names (the entrant ids are their indices).
+   * A round robin tournament plays all of its rounds.
+   * @param format the format of the tournament
+   * @param names the names of the entrants (at least 2)
+   */
+  public Tournament(Format format, List<String> names) {
+    this(format, names, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a new tournament between the entrants with the given names (the entrant ids are their indices).
+   * @param format the format of the tournament
+   * @param names the names of the entrants (at least 2)
+   * @param maxRounds the maximum number of rounds of a round robin tournament (ignored for elimination)
+   */
+  public Tournament(Format format, List<String> names, int maxRounds) {
+    if (names.size() < 2) {
+      throw new IllegalArgumentException("a tournament needs at least 2 entrants");
+    }
+    int n = names.size();
+    this.format = format;
+    this.names = names.toArray(new String[n]);
+    this.totalScores = new int[n];
+    this.points = new int[n];
+    this.standings = new TopK(STANDINGS_SIZE, n);
+    this.round = 0;
+    this.matchesPlayed = 0;
+
+    this.circleSize = n % 2 == 0 ? n : n + 1;
+    this.roundCount = format == Format.ROUND_ROBIN ? Math.min(maxRounds, this.circleSize - 1) : 0;
+    this.nextMatchInRound = 0;
+
+    if (format == Format.ELIMINATION) {
+      this.bracket = new int[n];
+      for (int i = 0; i < n; i++) {
+        this.bracket[i] = i;
+      }
+      this.bracketSize = n;
+      this.advanced = new int[(n + 1) / 2];
+      this.advancedSize = 0;
+      this.nextInBracket = 0;
+    }
+  }
+
+  /**
+   * Fills the given array with the ids of the two entrants of the next match (skipping byes).
+   * @param match the array to fill (of length 2)
+   * @return true if there is a next match, false if the tournament is finished
+   */
+  public boolean nextMatch(int[] match) {
+    return this.format == Format.ELIMINATION ? nextEliminationMatch(match) : nextRoundRobinMatch(match);
+  }
+
+  /**
+   * Finds the next match of the elimination bracket, moving onto the next round when the current one is done.
+   */
+  private boolean nextEliminationMatch(int[] match) {
+    while (true) {
+      int left = this.bracketSize - this.nextInBracket;
+      if (left >= 2) {
+        match[0] = this.bracket[this.nextInBracket];
+        match[1] = this.bracket[this.nextInBracket + 1];
+        return true;
+      }
+      if (left == 1) { //bye: the entrant without an opponent advances
+        this.advanced[this.advancedSize++] = this.bracket[this.nextInBracket];
+        this.nextInBracket++;
+      }
+      if (this.advancedSize <= 1) {
+        return false; //one entrant left: the champion
+      }
+      //next round
+      int[] swap = this.bracket;
+      this.bracket = this.advanced;
+      this.bracketSize = this.advancedSize;
+      this.advanced = swap;
+      this.advancedSize = 0;
+      this.nextInBracket = 0;
+      this.round++;
+    }
+  }
+
+  /**
+   * Finds the next match of the round robin with the circle method, skipping the byes.
+   */
+  private boolean nextRoundRobinMatch(int[] match) {
+    int m = this.circleSize - 1; //the last position of the circle stays fixed, the others rotate every round
+    while (this.round < this.roundCount) {
+      while (this.nextMatchInRound < this.circleSize / 2) {
+        int i = this.nextMatchInRound;
+        int a = i == 0 ? m : (this.round + i) % m;
+        int b = i == 0 ? this.round % m : (this.round - i + m) % m;
+        if (a < this.names.length && b < this.names.length) { //a position past the last entrant is a bye
+          match[0] = Math.min(a, b);
+          match[1] = Math.max(a, b);
+          return true;
+        }
+        this.nextMatchInRound++;
+      }
+      this.nextMatchInRound = 0;
+      this.round++;
+    }
+    return false;
+  }
+
+  /**
+   * Reports the scores of the match that was last returned by nextMatch, and updates the standings.
+   * @param match the ids of the two entrants of the match
+   * @param scores the scores of the two entrants
+   */
+  public void reportMatch(int[] match, int[] scores) {
+    int a = match[0], b = match[1];
+    this.totalScores[a] += scores[0];
+    this.totalScores[b] += scores[1];
+    if (this.format == Format.ELIMINATION) {
+      int winner = scores[0] >= scores[1] ? a : b; //on a draw, the lower id (earlier in the bracket) advances
+      this.points[winner]++;
+      this.advanced[this.advancedSize++] = winner;
+      this.nextInBracket += 2;
+    }
+    else {
+      if (scores[0] > scores[1]) {
+        this.points[a] += 2;
+      }
+      else if (scores[0] < scores[1]) {
+        this.points[b] += 2;
+      }
+      else {
+        this.points[a]++;
+        this.points[b]++;
+      }
+      this.nextMatchInRound++;
+    }
+    this.standings.increase(a, standingsKey(a));
+    this.standings.increase(b, standingsKey(b));
+    this.matchesPlayed++;
+  }
+
+  /**
+   * Returns the key of the given entrant in the standings: points first, then total score.
+   */
+  private long standingsKey(int entrant) {
+    return ((long) this.points[entrant] << 32) | (this.totalScores[entrant] & 0xffffffffL);
+  }
+
+  /**
+   * Returns the ids of the top entrants in the current standings (most points first, then highest total score).
+   * @param n the number of entrants to return (at most STANDINGS_SIZE)
+   * @return the ids of the top entrants
+   */
+  public int[] getStandings(int n) {
+    return this.standings.top(n);
+  }
+
+  /**
+   * Returns the champion of a finished tournament (the top of the standings for a round robin).
+   * @return the id of the champion, or -1 if the tournament isn't finished
+   */
+  public int getChampion() {
+    if (this.format == Format.ELIMINATION) {
+      return !hasNextMatch() && this.advancedSize == 1 ? this.advanced[0] : -1;
+    }
+    return hasNextMatch() ? -1 : getStandings(1)[0];
+  }
+
+  /**
+   * Determines if there are matches left to play.
+   * @return true if there is a next match
+   */
+  public boolean hasNextMatch() {
+    return nextMatch(this.peek);
+  }
+
+  /**
+   * Returns the format of this tournament.
+   * @return the format of this tournament
+   */
+  public Format getFormat() {
+    return this.format;
+  }
+
+  /**
+   * Returns the number of entrants in this tournament.
+   * @return the number of entrants
+   */
+  public int getEntrantCount() {
+    return this.names.length;
+  }
+
+  /**
+   * Returns the name of the given entrant.
+   * @param entrant the id of the entrant
+   * @return the name of the entrant
+   */
+  public String getName(int entrant) {
+    return this.names[entrant];
+  }
+
+  /**
+   * Returns the points of the given entrant (matches won for elimination, 2 per win and 1 per draw for round robin).
+   * @param entrant the id of the entrant
+   * @return the points of the entrant
+   */
+  public int getPoints(int entrant) {
+    return this.points[entrant];
+  }
+
+  /**
+   * Returns the sum of the given entrant's scores in all of their matches.
+   * @param entrant the id of the entrant
+   * @return the total score of the entrant
+   */
+  public int getTotalScore(int entrant) {
+    return this.totalScores[entrant];
+  }
+
+  /**
+   * Returns the current round of this tournament (starting at 1).
+   * @return the current round
+   */
+  public int getRound() {
+    if (this.format == Format.ROUND_ROBIN) {
+      return Math.min(this.round, this.roundCount - 1) + 1; //stays at the last round once the tournament is finished
+    }
+    return this.round + 1;
+  }
+
+  /**
+   * Returns the number of matches that have been reported so far.
+   * @return the number of matches played
+   */
+  public int getMatchesPlayed() {
+    return this.matchesPlayed;
+  }
+}
@@ -0,0 +1,118 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * Represents one clickable area of the user interface (e.g. a button or a name box), 
+ * with its bounds, when it is enabled, and what happens when it is clicked.
+ * The bounds are set once when the node is created, so finding the node under the mouse doesn't 
+ * need to compute any geometry.
+ * @author stefanieim
+ */
+public class UiNode {
+  public final static int NO_TAG = -1;
+
+  private final int x; //x position of the top left corner
+  private final int y; //y position of the top left corner
+  private final int width;
+  private final int height;
+  private final BooleanSupplier enabled; //whether the node can be clicked right now (null for always)
+  private final Runnable action; //what happens when the node is clicked (null for nothing)
+  private final int tag; //identifies the node to its owner (e.g. the index of a name box), NO_TAG for none
+
+  /**
+   * Creates a new node with the given bounds.
+   * @param x the x position of the top left corner
+   * @param y the y position of the top left corner
+   * @param width the width of the node
+   * @param height the height of the node
+   * @param enabled whether the node can be clicked right now (null for always)
+   * @param action what happens when the node is clicked (null for nothing)
+   * @param tag identifies the node to its owner (NO_TAG for none)
+   */
+  public UiNode(int x, int y, int width, int height, BooleanSupplier enabled, Runnable action, int tag) {
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+    this.enabled = enabled;
+    this.action = action;
+    this.tag = tag;
+  }
+
+  /**
+   * Creates a new node with the bounds of the given button.
+   * @param btn the button
+   * @param enabled whether the button can be clicked right now (null for always)
+   * @param action what happens when the button is clicked
+   * @return the node of the button
+   */
+  public static UiNode of(Button btn, BooleanSupplier enabled, Runnable action) {
+    return new UiNode(btn.getX(), btn.getY(), btn.getWidth(), btn.getHeight(), enabled, action, NO_TAG);
+  }
+
+  /**
+   * Determines if the given point is within this node's bounds (including its edges).
+   * @param px the x position of the point
+   * @param py the y position of the point
+   * @return true if the point is within this node
+   */
+  public boolean contains(int px, int py) {
+    return (this.x <= px && px <= this.x + this.width) && (this.y <= py && py <= this.y + this.height);
+  }
+
+  /**
+   * Determines if this node can be clicked right now.
+   * @return true if this node is enabled
+   */
+  public boolean isEnabled() {
+    return this.enabled == null || this.enabled.getAsBoolean();
+  }
+
+  /**
+   * Runs this node's action (if it has one).
+   */
+  public void click() {
+    if (this.action != null) {
+      this.action.run();
+    }
+  }
+
+  /**
+   * Returns the tag that identifies this node to its owner.
+   * @return the tag of this node, or NO_TAG
+   */
+  public int getTag() {
+    return this.tag;
+  }
+
+  /**
+   * Returns the x position of the top left corner of this node.
+   * @return the x position of this node
+   */
+  public int getX() {
+    return this.x;
+  }
+
+  /**
+   * Returns the y position of the top left corner of this node.
+   * @return the y position of this node
+   */
+  public int getY() {
+    return this.y;
+  }
+
+  /**
+   * Returns the width of this node.
+   * @return the width of this node
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Returns the height of this node.
+   * @return the height of this node
+   */
+  public int getHeight() {
+    return this.height;
+  }
+}
@@ -0,0 +1,70 @@
+import java.util.HashMap;
+import java.util.Map;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * This class keeps the rendered images of widgets (e.g. buttons), so that each widget is rendered only once
+ * and then just drawn onto the canvas at every frame. Images are keyed by everything that changes how
+ * a widget looks (label, size and palette), so widgets that look the same share one image.
+ * @author stefanieim
+ */
+public class WidgetCache {
+  private final Map<String, PImage> images;
+  private int version; //increased every time the cache is invalidated (e.g. when the theme changes)
+
+  /**
+   * Creates a new empty widget cache.
+   */
+  public WidgetCache() {
+    this.images = new HashMap<String, PImage>();
+    this.version = 0;
+  }
+
+  /**
+   * Returns the rendered image of the given button, rendering it first if it is not in the cache yet.
+   * @param sketch the sketch that the button is drawn onto (used to create the image)
+   * @param button the button to get the image of
+   * @param hover true for the image of the button's hover state
+   * @return the rendered image of the button
+   */
+  public PImage get(PApplet sketch, Button button, boolean hover) {
+    String key = button.cacheKey(hover);
+    PImage image = this.images.get(key);
+    if (image == null) {
+      PGraphics pg = sketch.createGraphics(button.getWidth(), button.getHeight());
+      pg.beginDraw();
+      button.render(pg, hover);
+      pg.endDraw();
+      image = pg;
+      this.images.put(key, image);
+    }
+    return image;
+  }
+
+  /**
+   * Removes all images from this cache (e.g. when the theme changes), so that all widgets are rendered again.
+   */
+  public void invalidate() {
+    this.images.clear();
+    this.version++;
+  }
+
+  /**
+   * Returns the current version of this cache, which changes every time the cache is invalidated.
+   * @return the current version of this cache
+   */
+  public int getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Returns the number of images in this cache.
+   * @return the number of images in this cache
+   */
+  public int size() {
+    return this.images.size();
+  }
+}